@@ -0,0 +1,151 @@
+package gitlet;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static gitlet.Utils.*;
+
+/** The objects of an alternate, an object directory of another repository: its loose objects and its packs,
+ *  or its packs only when it is a pack directory. They are read but never written, the other repository alone
+ *  writing to it, hence an ObjectSource.
+ *
+ *  Most of the objects a repository looks for in its alternates are new ones, in none of them, and each of
+ *  these misses costs a stat of a loose file and a search of every pack index. So once FILTER_AFTER_MISSES
+ *  lookups have missed, the IDs of the alternate are listed into an ObjectFilter, which answers the next
+ *  misses in memory; the lookups it lets through go on to the loose objects and packs. The filter is built
+ *  once per process, so commands looking up a few objects never list the alternate, and objects written to the
+ *  alternate afterwards are not seen until the next command, as with packs.
+ */
+class AlternateObjectSource implements ObjectSource {
+
+    /** Number of misses answered by the loose objects and packs before the filter is built. */
+    static final int FILTER_AFTER_MISSES = 64;
+
+    private final File dir;
+    private final LooseObjectStore loose;
+    private final PackedObjectStore packed;
+
+    private final AtomicInteger misses = new AtomicInteger();
+    /** The IDs of the alternate, or null until the filter is built */
+    private volatile ObjectFilter filter;
+
+    /** The alternate DIR: an object directory, or a directory of packs if it is named "pack". */
+    AlternateObjectSource(File dir) {
+        this.dir = dir;
+        if (dir.getName().equals("pack")) {
+            this.loose = null;
+            this.packed = new PackedObjectStore(dir);
+        } else {
+            this.loose = new LooseObjectStore(dir);
+            this.packed = new PackedObjectStore(join(dir, "pack"));
+        }
+    }
+
+    File getDir() {
+        return dir;
+    }
+
+    @Override
+    public boolean has(ObjectId id) {
+        ObjectFilter objectFilter = filter;
+        if (objectFilter != null && !objectFilter.mightContain(id)) {
+            return false;
+        }
+        ObjectStore store = storeOf(id);
+        if (store == null && objectFilter == null && misses.incrementAndGet() == FILTER_AFTER_MISSES) {
+            buildFilter();
+        }
+        return store != null;
+    }
+
+    @Override
+    public InputStream open(ObjectId id) {
+        return storeContaining(id).open(id);
+    }
+
+    @Override
+    public byte[] read(ObjectId id) {
+        return storeContaining(id).read(id);
+    }
+
+    @Override
+    public long length(ObjectId id) {
+        return storeContaining(id).length(id);
+    }
+
+    @Override
+    public <T extends Serializable> T readObject(ObjectId id, Class<T> expectedClass) {
+        return storeContaining(id).readObject(id, expectedClass);
+    }
+
+    @Override
+    public void copyTo(ObjectId id, WritableByteChannel out) {
+        storeContaining(id).copyTo(id, out);
+    }
+
+    @Override
+    public List<ObjectId> findPrefix(String prefix) {
+        List<ObjectId> found = new ArrayList<>(packed.findPrefix(prefix));
+        if (loose != null) {
+            found.addAll(loose.findPrefix(prefix));
+        }
+        return found;
+    }
+
+    @Override
+    public void close() {
+        packed.close();
+    }
+
+    /** List the loose and packed IDs of the alternate into the filter. */
+    private synchronized void buildFilter() {
+        if (filter != null) {
+            return;
+        }
+        List<ObjectId> ids = new ArrayList<>();
+        for (PackFile pack: packed.packs()) {
+            for (int i = 0; i < pack.size(); ++i) {
+                ids.add(pack.idAt(i));
+            }
+        }
+        if (loose != null) {
+            for (int b = 0; b < 256; ++b) {
+                String prefix = String.format("%02x", b);
+                List<String> names = plainFilenamesIn(join(dir, prefix));
+                if (names != null) {
+                    for (String name: names) {
+                        if (name.length() == ObjectId.HEX_LENGTH - 2 && ObjectId.isHex(prefix + name)) {
+                            ids.add(ObjectId.fromHex(prefix + name));
+                        }
+                    }
+                }
+            }
+        }
+        ObjectFilter objectFilter = new ObjectFilter(ids.size());
+        for (ObjectId id: ids) {
+            objectFilter.add(id);
+        }
+        filter = objectFilter;
+    }
+
+    /** Return the store of the alternate that has object ID, or null if none has it. */
+    private ObjectStore storeOf(ObjectId id) {
+        if (loose != null && loose.has(id)) {
+            return loose;
+        }
+        return packed.has(id) ? packed : null;
+    }
+
+    private ObjectStore storeContaining(ObjectId id) {
+        ObjectStore store = storeOf(id);
+        if (store == null) {
+            throw new IllegalArgumentException("Unable to load object " + id);
+        }
+        return store;
+    }
+}
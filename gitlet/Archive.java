@@ -0,0 +1,208 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static gitlet.Utils.*;
+
+/** Writes the files of a commit into a tar or zip archive, straight from the object store.
+ *
+ *  Nothing is written to the working directory: each blob is copied from its loose file or pack into the
+ *  archive. Tar members are stored as they are, so they are copied with copyTo, which transfers loose objects
+ *  file to file without passing them through the JVM; zip members are deflated, so they are streamed through it.
+ *  The objects are looked up, and their lengths read, by the worker pool BATCH_SIZE at a time, ahead of
+ *  the writing, which is sequential.
+ */
+class Archive {
+
+    /** Number of objects looked up at once. */
+    static final int BATCH_SIZE = 1024;
+
+    /** Size of the blocks of a tar archive. */
+    private static final int BLOCK = 512;
+
+    private final ObjectStore store;
+    private final Snapshot snapshot;
+    /** The modification time of the members, in milliseconds. */
+    private final long time;
+
+    /** The archive of the files of COMMIT, whose blobs are in STORE. */
+    Archive(ObjectStore store, Commit commit) {
+        this.store = store;
+        this.snapshot = commit.getSnapshot();
+        this.time = commit.getTime();
+    }
+
+    /** Write the archive to OUT, as a zip file if its name ends with .zip, as a tar file otherwise. */
+    void write(File out) {
+        try {
+            if (out.getName().endsWith(".zip")) {
+                writeZip(out);
+            } else {
+                writeTar(out);
+            }
+        } catch (IOException e) {
+            throw error(e.getMessage());
+        }
+    }
+
+    /** Write a POSIX (ustar) tar archive to OUT. */
+    private void writeTar(File out) throws IOException {
+        try (FileChannel channel = FileChannel.open(out.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            forEachBatch((files, lengths) -> {
+                for (int i = 0; i < files.size(); ++i) {
+                    String path = files.get(i).getKey();
+                    long length = lengths.get(i);
+                    writeFully(channel, tarHeader(path, length));
+                    store.copyTo(files.get(i).getValue(), channel);
+                    writeFully(channel, ByteBuffer.allocate(padding(length)));
+                }
+            });
+            // The end of the archive is two zero blocks
+            writeFully(channel, ByteBuffer.allocate(2 * BLOCK));
+        }
+    }
+
+    /** Write a zip archive to OUT. */
+    private void writeZip(File out) throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(out)))) {
+            forEachBatch((files, lengths) -> {
+                for (int i = 0; i < files.size(); ++i) {
+                    ZipEntry entry = new ZipEntry(files.get(i).getKey());
+                    entry.setTime(time);
+                    entry.setSize(lengths.get(i));
+                    zip.putNextEntry(entry);
+                    try (InputStream in = store.open(files.get(i).getValue())) {
+                        in.transferTo(zip);
+                    }
+                    zip.closeEntry();
+                }
+            });
+        }
+    }
+
+    /** Receives the files of a batch, as paths and blob IDs, with the lengths of their blobs. */
+    private interface BatchWriter {
+        void write(List<Map.Entry<String, ObjectId>> files, List<Long> lengths) throws IOException;
+    }
+
+    /** Hand the files of the snapshot to WRITER, in path order, BATCH_SIZE at a time, once the lengths of
+     *  their blobs have been read by the worker pool. */
+    private void forEachBatch(BatchWriter writer) throws IOException {
+        List<Map.Entry<String, ObjectId>> files = new ArrayList<>(BATCH_SIZE);
+        Snapshot.Cursor cursor = snapshot.cursor();
+        boolean more = cursor.next();
+        while (more) {
+            files.add(Map.entry(cursor.path(), cursor.id()));
+            more = cursor.next();
+            if (files.size() == BATCH_SIZE || !more) {
+                writer.write(files, RepoHelper.parallelMap(files, file -> store.length(file.getValue())));
+                files = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+    }
+
+    /** Return the header of a regular file at PATH holding LENGTH bytes, preceded by a pax extended header
+     *  if PATH does not fit in the name and prefix fields. */
+    private ByteBuffer tarHeader(String path, long length) {
+        byte[] name = path.getBytes(StandardCharsets.UTF_8);
+        int split = splitName(name);
+        if (split >= 0) {
+            return ByteBuffer.wrap(header(name, split, length, '0'));
+        }
+        // A pax record is "[length] path=[path]\n", its length counting its own digits
+        byte[] record = (" path=" + path + "\n").getBytes(StandardCharsets.UTF_8);
+        int recordLength = record.length + 1;
+        while (recordLength != record.length + Integer.toString(recordLength).length()) {
+            recordLength += 1;
+        }
+        byte[] pax = (recordLength + new String(record, StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8);
+        byte[] shortName = truncate(name, 100);
+        ByteBuffer headers = ByteBuffer.allocate(BLOCK + pax.length + padding(pax.length) + BLOCK);
+        headers.put(header(truncate(("PaxHeaders/" + path).getBytes(StandardCharsets.UTF_8), 100), 0,
+                pax.length, 'x'));
+        headers.put(pax).position(headers.position() + padding(pax.length));
+        headers.put(header(shortName, 0, length, '0'));
+        return headers.flip();
+    }
+
+    /** Return a ustar header block for NAME, whose bytes before SPLIT go in the prefix field and whose
+     *  bytes after it in the name field, of type TYPE holding LENGTH bytes. */
+    private byte[] header(byte[] name, int split, long length, char type) {
+        byte[] header = new byte[BLOCK];
+        int nameStart = split == 0 ? 0 : split + 1;
+        System.arraycopy(name, nameStart, header, 0, name.length - nameStart);
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putOctal(header, 124, 12, length);
+        putOctal(header, 136, 12, time / 1000);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+        System.arraycopy(name, 0, header, 345, split);
+
+        // The checksum is the sum of the bytes of the header, its own field counting as spaces
+        for (int i = 148; i < 156; ++i) {
+            header[i] = ' ';
+        }
+        int checksum = 0;
+        for (byte b: header) {
+            checksum += b & 0xff;
+        }
+        putOctal(header, 148, 7, checksum);
+        return header;
+    }
+
+    /** Return where to split NAME between the prefix and name fields of a ustar header: 0 if it fits in the
+     *  name field, the index of the separating '/' if it needs the prefix field, or -1 if it fits in neither. */
+    private static int splitName(byte[] name) {
+        if (name.length <= 100) {
+            return 0;
+        }
+        for (int i = Math.min(155, name.length - 1); i > 0; --i) {
+            if (name[i] == '/' && name.length - i - 1 <= 100) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] truncate(byte[] bytes, int length) {
+        byte[] result = new byte[Math.min(bytes.length, length)];
+        System.arraycopy(bytes, 0, result, 0, result.length);
+        return result;
+    }
+
+    /** Write VALUE in octal into the LENGTH bytes of HEADER at OFFSET, zero padded and NUL terminated. */
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        String octal = Long.toOctalString(value);
+        byte[] digits = ("0".repeat(Math.max(0, length - 1 - octal.length())) + octal)
+                .getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(digits, 0, header, offset, length - 1);
+        header[offset + length - 1] = 0;
+    }
+
+    /** Number of zero bytes padding LENGTH bytes to a whole number of blocks. */
+    private static int padding(long length) {
+        return (int) ((BLOCK - length % BLOCK) % BLOCK);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/** A benchmarking class for the performance-sensitive parts of gitlet, invoked as follows:
+ *      java gitlet.Benchmark make-tree DIR FILES [FANOUT]
+ *          creates a synthetic tree of FILES small files under DIR, FANOUT entries per directory.
+ *      java gitlet.Benchmark walk DIR [ROUNDS]
+ *          compares the parallel TreeWalker with a sequential Files.walk over DIR.
+ *      java gitlet.Benchmark store DIR OBJECTS [SIZE]
+ *          writes then reads OBJECTS objects of SIZE bytes with each ObjectStore backend, under DIR.
+ *      java gitlet.Benchmark hash OBJECTS [SIZE]
+ *          hashes OBJECTS objects of SIZE bytes with each HashAlgorithm, on one thread then on the worker pool,
+ *          and with a new MessageDigest per object as a baseline.
+ *  Each result is printed as the best of ROUNDS runs, in files per second.
+ */
+public class Benchmark {
+
+    private static final String USAGE = "Usage: java gitlet.Benchmark (make-tree DIR FILES [FANOUT]"
+            + " | walk DIR [ROUNDS] | store DIR OBJECTS [SIZE] | hash OBJECTS [SIZE])";
+
+    public static void main(String... args) {
+        if (args.length == 0) {
+            Utils.raiseError(USAGE);
+        }
+        try {
+            switch (args[0]) {
+                case "make-tree":
+                    checkArgs(args, 3, 4);
+                    makeTree(new File(args[1]), Integer.parseInt(args[2]),
+                            args.length > 3 ? Integer.parseInt(args[3]) : 32);
+                    break;
+                case "walk":
+                    checkArgs(args, 2, 3);
+                    walk(args[1], args.length > 2 ? Integer.parseInt(args[2]) : 5);
+                    break;
+                case "store":
+                    checkArgs(args, 3, 4);
+                    store(new File(args[1]), Integer.parseInt(args[2]),
+                            args.length > 3 ? Integer.parseInt(args[3]) : 1024);
+                    break;
+                case "hash":
+                    checkArgs(args, 2, 3);
+                    hash(Integer.parseInt(args[1]), args.length > 2 ? Integer.parseInt(args[2]) : 4096);
+                    break;
+                default:
+                    Utils.raiseError("No benchmark with that name exists.");
+            }
+        } catch (NumberFormatException e) {
+            Utils.raiseError(USAGE);
+        }
+    }
+
+    /** Print the usage and exit unless ARGS, the benchmark name included, has between MIN and MAX elements. */
+    private static void checkArgs(String[] args, int min, int max) {
+        if (args.length < min || args.length > max) {
+            Utils.raiseError(USAGE);
+        }
+    }
+
+    /** Create FILES files under DIR, with at most FANOUT files or directories per directory. */
+    static void makeTree(File dir, int files, int fanout) {
+        for (int i = 0; i < files; ++i) {
+            StringBuilder path = new StringBuilder();
+            for (int n = i / fanout; n > 0; n /= fanout) {
+                path.insert(0, "d" + (n % fanout) + "/");
+            }
+            File file = Utils.join(dir, path + "f" + i + ".txt");
+            file.getParentFile().mkdirs();
+            Utils.writeContents(file, "file " + i + "\n");
+        }
+    }
+
+    /** Walk DIR ROUNDS times with each walker and report the best throughput. */
+    static void walk(String dir, int rounds) {
+        TreeWalker walker = new TreeWalker(new IgnoreMatcher(List.of()));
+        long best = Long.MAX_VALUE;
+        int count = 0;
+        for (int i = 0; i < rounds; ++i) {
+            long start = System.nanoTime();
+            count = walker.walk(dir).size();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        report("parallel TreeWalker", count, best);
+
+        best = Long.MAX_VALUE;
+        for (int i = 0; i < rounds; ++i) {
+            long start = System.nanoTime();
+            try (Stream<Path> stream = Files.walk(Paths.get(dir))) {
+                count = (int) stream.filter(Files::isRegularFile).count();
+            } catch (IOException e) {
+                throw Utils.error(e.getMessage());
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        report("sequential Files.walk", count, best);
+    }
+
+    /** Put COUNT objects of SIZE bytes one by one, then all at once, into each backend, then read them back. */
+    static void store(File dir, int count, int size) {
+        Map<ObjectId, byte[]> objects = new LinkedHashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < count; ++i) {
+            byte[] contents = new byte[size];
+            random.nextBytes(contents);
+            objects.put(Utils.sha1(contents), contents);
+        }
+        Map<String, Supplier<ObjectStore>> backends = new LinkedHashMap<>();
+        backends.put("memory", MemoryObjectStore::new);
+        backends.put("loose", () -> new LooseObjectStore(Utils.join(dir, "loose-" + System.nanoTime())));
+        backends.put("packed", () -> new PackedObjectStore(Utils.join(dir, "packed-" + System.nanoTime())));
+        backends.put("memory/loose/packed", () -> new LayeredObjectStore(new MemoryObjectStore(),
+                List.of(new LooseObjectStore(Utils.join(dir, "layered-" + System.nanoTime())),
+                new PackedObjectStore(Utils.join(dir, "layered-pack-" + System.nanoTime())))));
+
+        for (Map.Entry<String, Supplier<ObjectStore>> backend: backends.entrySet()) {
+            ObjectStore store = backend.getValue().get();
+            long start = System.nanoTime();
+            // One pack per object would only measure pack creation, so the packed backend is batched
+            if (!backend.getKey().equals("packed")) {
+                for (Map.Entry<ObjectId, byte[]> object: objects.entrySet()) {
+                    store.put(object.getKey(), object.getValue());
+                }
+                report(backend.getKey() + " put", count, System.nanoTime() - start);
+            }
+            store = backend.getValue().get();
+            start = System.nanoTime();
+            store.putAll(objects);
+            report(backend.getKey() + " putAll", count, System.nanoTime() - start);
+            start = System.nanoTime();
+            long bytes = 0;
+            for (ObjectId id: objects.keySet()) {
+                bytes += store.read(id).length;
+            }
+            report(backend.getKey() + " read", count, System.nanoTime() - start);
+            if (bytes != (long) count * size) {
+                throw Utils.error("Read back " + bytes + " bytes instead of " + (long) count * size);
+            }
+            store.close();
+        }
+    }
+
+    /** Hash COUNT objects of SIZE bytes with each hash function, and report the best of 5 rounds in bytes/s. */
+    static void hash(int count, int size) {
+        List<byte[]> objects = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < count; ++i) {
+            byte[] contents = new byte[size];
+            random.nextBytes(contents);
+            objects.add(contents);
+        }
+        long bytes = (long) count * size;
+        for (String digestName: new String[] {"SHA-1", "SHA-256"}) {
+            reportBytes(digestName + " new digest each", bytes, best(() -> {
+                for (byte[] contents: objects) {
+                    try {
+                        MessageDigest.getInstance(digestName).digest(contents);
+                    } catch (NoSuchAlgorithmException e) {
+                        throw Utils.error(e.getMessage());
+                    }
+                }
+            }));
+        }
+        for (HashAlgorithm algorithm: HashAlgorithm.values()) {
+            reportBytes(algorithm.getName() + " one thread", bytes, best(() -> {
+                for (byte[] contents: objects) {
+                    algorithm.hash(contents);
+                }
+            }));
+            reportBytes(algorithm.getName() + " worker pool", bytes,
+                    best(() -> RepoHelper.parallelMap(objects, algorithm::hash)));
+        }
+    }
+
+    /** Run TASK 5 times and return the shortest time, in nanoseconds. */
+    private static long best(Runnable task) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 5; ++i) {
+            long start = System.nanoTime();
+            task.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    private static void reportBytes(String name, long bytes, long nanos) {
+        System.out.printf("%-28s %10.1f MB %10.1f ms %14.1f MB/s%n",
+                name, bytes / 1e6, nanos / 1e6, bytes / 1e6 / (nanos / 1e9));
+    }
+
+    private static void report(String name, long items, long nanos) {
+        System.out.printf("%-28s %10d items %10.1f ms %14.0f items/s%n",
+                name, items, nanos / 1e6, items / (nanos / 1e9));
+    }
+}
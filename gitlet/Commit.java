@@ -1,19 +1,21 @@
 package gitlet;
 
-import java.io.IOException;
 import java.io.Serial;
 import java.io.Serializable;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Locale;
 
 import static gitlet.Utils.*;
-import gitlet.Utils.*;
-import java.io.File;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
 
 /** Represents a gitlet commit object. */
 public class Commit implements Serializable {
+
+    /** Fixed, so that changing the methods of a class does not change its serialized form, whose version is
+     *  RepoHelper.FORMAT_VERSION; the same goes for Snapshot, ObjectId and Staging. */
+    private static final long serialVersionUID = 1L;
+
     /**
      *
      * List all instance variables of the Commit class here with a useful
@@ -21,6 +23,9 @@ public class Commit implements Serializable {
      * variable is used. We've provided one example for `message`.
      */
 
+    /** The format of Date.toString(), in which timestamps are kept. */
+    static final String DATE_FORMAT = "EEE MMM dd HH:mm:ss zzz yyyy";
+
     /** The message of this Commit. */
     private String message;
 
@@ -29,83 +34,79 @@ public class Commit implements Serializable {
      * */
     private String timestamp;
 
-    /** The parent commit of the current commit, represented as a 40-digit SHA1 string
-     * containing the filename of serialized parent commit.
+    /** The parent commit of the current commit, represented as the SHA1 ID
+     * of the serialized parent commit. It is null only for the initial commit.
      * There is only one such parent since the commit history is a tree-like structure.
      * */
-    private String parent;
+    private ObjectId parent;
 
 
-    /** Second parent is only useful when merging. Similarly to parent, also a 40-digit SHA1 string */
-    private String secondParent;
+    /** Second parent is only useful when merging. Similarly to parent, also a SHA1 ID */
+    private ObjectId secondParent;
 
-    /** Snapshot is hash map that map the relative paths of files tracked by this commit
+    /** Snapshot is a sorted, immutable map from the relative paths of files tracked by this commit
      *  to their sha1 (since different files have different sha1, sha1 can denote the version of a file)
      */
-    protected Map<String, String> snapshot;
+    protected Snapshot snapshot;
+
+    /** Constructor of Commit class. SNAPSHOT is usually built by editing the snapshot of the parent. */
+    public Commit(String message, ObjectId parent, Snapshot snapshot, ObjectId secondParent) {
+        // The parent will be null only when the commit is "initial commit"
+        this(message, parent, snapshot, secondParent, parent == null ? new Date(0) : new Date());
+    }
 
-    /** Constructor of Commit class */
-    public Commit(String message, String parent, Map<String, String> parentSnapshot, String secondParent) {
+    /** A commit created at DATE, for commits imported from elsewhere. */
+    Commit(String message, ObjectId parent, Snapshot snapshot, ObjectId secondParent, Date date) {
         this.message = message;
         this.parent = parent;
-        this.snapshot = new HashMap<>();
+        this.snapshot = snapshot;
         this.secondParent = secondParent;
-        if (parent == "null") { // The parent will be "null" only when the commit is "initial commit"
-            Date date = new Date(0);
-            this.timestamp = date.toString();
-        } else {
-            Date date = new Date();
-            this.timestamp = date.toString();
-            // Copy the blobMap from its parent
-            for (Map.Entry<String, String> entry:parentSnapshot.entrySet()){
-                this.snapshot.put(entry.getKey(), entry.getValue());
-            }
-        }
+        this.timestamp = date.toString();
     }
 
     public String getMessage() {
         return this.message;
     }
 
-    public String getParent() {
+    /** The time when the commit was created, in milliseconds since the epoch. */
+    public long getTime() {
+        try {
+            return new SimpleDateFormat(DATE_FORMAT, Locale.US).parse(timestamp).getTime();
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("malformed commit date: " + timestamp);
+        }
+    }
+
+    public ObjectId getParent() {
         return this.parent;
     }
 
-    public String getSecondParent() {return this.secondParent;}
+    public ObjectId getSecondParent() {return this.secondParent;}
 
 
-    /** Get the SHA1 hash of the concatenation of metadata and content */
-    public String getHash() {
-        return sha1(serialize(this));
+    /** Get the ID of the concatenation of metadata and content, under the hash function of the repository */
+    public ObjectId getHash() {
+        return RepoHelper.hashObject(serialize(this));
     }
 
-    public Set<String> getTrackedFiles() {
-        return snapshot.keySet();
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /** The paths of the tracked files, in Snapshot.PATH_ORDER */
+    public Iterable<String> getTrackedFiles() {
+        return snapshot;
     }
 
     public boolean tracked(String filePath) {
-        return snapshot.containsKey(filePath);
+        return snapshot.contains(filePath);
     }
 
 
     /** Input the relative path of a file, if this file is tracked by the current commit, return its sha1 hash,
      * else return null */
-    public String getBlobHash(String filePath) {
-        if (snapshot.containsKey(filePath)) {
-            return snapshot.get(filePath);
-        } else {
-            return "null";
-        }
-    }
-
-    /** Update the version of a file through adding/changing the blob it maps to */
-    public void updateFileVersion(String filePath, String blobHash) {
-        snapshot.put(filePath, blobHash);
-    }
-
-    /** Stop this commit from tracking a file  */
-    public void removeFileFromTracking(String filePath) {
-        snapshot.remove(filePath);
+    public ObjectId getBlobHash(String filePath) {
+        return snapshot.get(filePath);
     }
 
     /** Log message in proper format, including hashID, timestamp, and commit message.
@@ -116,7 +117,7 @@ public class Commit implements Serializable {
         String log = "===\n";
         log = log + "commit " + getHash() + "\n";
         if (secondParent != null) {
-            log = log + "Merge: " + parent.substring(0, 6) + " " + secondParent.substring(0, 6) + "\n";
+            log = log + "Merge: " + parent.abbreviate(6) + " " + secondParent.abbreviate(6) + "\n";
         }
         log = log + "Date: " + timestamp + "\n";
         log = log + message + "\n";
@@ -125,22 +126,11 @@ public class Commit implements Serializable {
 
 
 
-    /**  serialize current commit and save it to directory .gitlet/objects/
-     *   the filename of this commit will be the SHA1 of its metadata and content
+    /**  serialize current commit and save it to the object store of the repository,
+     *   under the SHA1 of its metadata and content
      * */
     public void saveCommit() {
-        File objectDir = join(System.getProperty("user.dir"), ".gitlet", "objects");
-        String commitHash = getHash();
-        try {
-            File saveDir = join(objectDir, commitHash.substring(0, 2));
-            if (!saveDir.exists()) {
-                saveDir.mkdir();
-            }
-            File commitFile = join(saveDir, commitHash.substring(2));
-            commitFile.createNewFile();
-            writeObject(commitFile, this);
-        } catch (IOException e) {
-            System.out.println(e.getMessage());
-        }
+        byte[] contents = serialize(this);
+        RepoHelper.objectStore().put(RepoHelper.hashObject(contents), contents);
     }
 }
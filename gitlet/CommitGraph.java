@@ -0,0 +1,319 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static gitlet.Utils.*;
+
+/** The commit graph, .gitlet/objects/info/commit-graph: the parents of the commits, and for each commit
+ *  a Bloom filter of the paths it changed against its first parent.
+ *
+ *  It lets history walks filtered by path (log PATH) follow parents and rule out the commits that did not
+ *  touch the path without deserializing them; only the commits whose filter may contain the path are read.
+ *  A changed file adds its path and the paths of its parent directories to the filter, so directories can be
+ *  looked up too. Filters use BITS_PER_ENTRY bits per path and HASH_COUNT hashes (about 1% false positives);
+ *  a commit changing more than MAX_CHANGED_PATHS paths gets a filter with all bits set.
+ *
+ *  Layout: a header (magic, version, commit count) and a fanout table as in a pack index, the sorted
+ *  commit IDs, the indexes of their two parents (-1 for none), the end offsets of their filters in the
+ *  filter data, and the filter data. The file is mapped once and never deserialized. It covers the commits
+ *  reachable from the branches when it was written; walks read newer commits directly.
+ */
+class CommitGraph {
+
+    static final File GRAPH_FILE = join(".gitlet", "objects", "info", "commit-graph");
+
+    static final byte[] MAGIC = "GCGR".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 12 + 256 * 4;
+    static final int BITS_PER_ENTRY = 10;
+    static final int HASH_COUNT = 7;
+    static final int MAX_CHANGED_PATHS = 512;
+
+    private final MappedByteBuffer graph;
+    private final int count;
+
+    private CommitGraph(MappedByteBuffer graph) {
+        this.graph = graph;
+        this.count = graph.getInt(8);
+    }
+
+    /** Map the commit graph of the repository, or return null if it has none. */
+    static CommitGraph load() {
+        if (!GRAPH_FILE.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(GRAPH_FILE.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer graph = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            for (int i = 0; i < MAGIC.length; ++i) {
+                if (graph.get(i) != MAGIC[i]) {
+                    return null;
+                }
+            }
+            return graph.getInt(4) == VERSION ? new CommitGraph(graph) : null;
+        } catch (IOException e) {
+            throw error(e.getMessage());
+        }
+    }
+
+    /** Number of commits in the graph. */
+    int size() {
+        return count;
+    }
+
+    /** Return the index of commit ID, or -1 if the graph does not cover it. */
+    int indexOf(ObjectId id) {
+        byte[] target = id.toRaw();
+        int b = id.firstByte();
+        int lo = b == 0 ? 0 : graph.getInt(12 + 4 * (b - 1));
+        int hi = graph.getInt(12 + 4 * b) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareRaw(HEADER_SIZE + mid * ObjectId.RAW_LENGTH, target);
+            if (cmp == 0) {
+                return mid;
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the ID of the I-th commit. */
+    ObjectId idAt(int i) {
+        byte[] raw = new byte[ObjectId.RAW_LENGTH];
+        graph.get(HEADER_SIZE + i * ObjectId.RAW_LENGTH, raw);
+        return ObjectId.fromRaw(raw);
+    }
+
+    /** Return the index of the first (WHICH = 0) or second (WHICH = 1) parent of the I-th commit, or -1. */
+    int parentAt(int i, int which) {
+        return graph.getInt(parentsOffset() + (2 * i + which) * 4);
+    }
+
+    /** Whether the I-th commit may have changed PATH, a file or a directory, against its first parent.
+     *  False means that it certainly did not. */
+    boolean mayHaveChanged(int i, String path) {
+        int start = i == 0 ? 0 : graph.getInt(filterEndsOffset() + (i - 1) * 4);
+        int end = graph.getInt(filterEndsOffset() + i * 4);
+        if (start == end) {
+            return false;
+        }
+        int bits = (end - start) * 8;
+        int base = filterEndsOffset() + count * 4 + start;
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        int h1 = murmur3(key, 0x293ae76f);
+        int h2 = murmur3(key, 0x7e646e2c);
+        for (int k = 0; k < HASH_COUNT; ++k) {
+            int bit = Integer.remainderUnsigned(h1 + k * h2, bits);
+            if ((graph.get(base + bit / 8) & (1 << (bit % 8))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Write the graph of the commits reachable from TIPS, replacing the current one.
+     *  The changed paths of the commits are computed on the worker pool. Return the number of commits. */
+    static int write(Collection<ObjectId> tips) {
+        // Collect the reachable commits, reading each of them once
+        Map<ObjectId, Commit> commits = new HashMap<>();
+        List<ObjectId> stack = new ArrayList<>(tips);
+        while (!stack.isEmpty()) {
+            ObjectId commitHash = stack.remove(stack.size() - 1);
+            if (commits.containsKey(commitHash)) {
+                continue;
+            }
+            Commit commit = RepoHelper.readCommit(commitHash);
+            commits.put(commitHash, commit);
+            if (commit.getParent() != null) {
+                stack.add(commit.getParent());
+            }
+            if (commit.getSecondParent() != null) {
+                stack.add(commit.getSecondParent());
+            }
+        }
+        List<ObjectId> ids = new ArrayList<>(commits.keySet());
+        ids.sort(null);
+        Map<ObjectId, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < ids.size(); ++i) {
+            indexes.put(ids.get(i), i);
+        }
+
+        List<byte[]> filters = RepoHelper.parallelMap(ids, commitHash -> {
+            Commit commit = commits.get(commitHash);
+            Snapshot parentSnapshot = commit.getParent() == null
+                    ? Snapshot.EMPTY : commits.get(commit.getParent()).getSnapshot();
+            return filterOf(changedPaths(parentSnapshot, commit.getSnapshot()));
+        });
+
+        File tempFile = new File(GRAPH_FILE.getPath() + ".tmp");
+        GRAPH_FILE.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(tempFile.toPath())))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(ids.size());
+            int[] fanout = new int[256];
+            for (ObjectId id: ids) {
+                fanout[id.firstByte()] += 1;
+            }
+            int cumulative = 0;
+            for (int bucket: fanout) {
+                cumulative += bucket;
+                out.writeInt(cumulative);
+            }
+            for (ObjectId id: ids) {
+                out.write(id.toRaw());
+            }
+            for (ObjectId id: ids) {
+                Commit commit = commits.get(id);
+                out.writeInt(commit.getParent() == null ? -1 : indexes.get(commit.getParent()));
+                out.writeInt(commit.getSecondParent() == null ? -1 : indexes.get(commit.getSecondParent()));
+            }
+            int end = 0;
+            for (byte[] filter: filters) {
+                end += filter.length;
+                out.writeInt(end);
+            }
+            for (byte[] filter: filters) {
+                out.write(filter);
+            }
+        } catch (IOException e) {
+            throw error(e.getMessage());
+        }
+        try {
+            Files.move(tempFile.toPath(), GRAPH_FILE.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw error(e.getMessage());
+        }
+        return ids.size();
+    }
+
+    /** Return the paths whose blob differs between the snapshots BEFORE and AFTER,
+     *  with the paths of their parent directories. */
+    static Set<String> changedPaths(Snapshot before, Snapshot after) {
+        Set<String> paths = new LinkedHashSet<>();
+        Snapshot.join((path, ids) -> {
+            if (ids[0] == null || !ids[0].equals(ids[1])) {
+                paths.add(path);
+                for (int slash = path.lastIndexOf('/'); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+                    if (!paths.add(path.substring(0, slash))) {
+                        break;
+                    }
+                }
+            }
+        }, before, after);
+        return paths;
+    }
+
+    /** Whether the file or directory PATH differs between the snapshots BEFORE and AFTER. */
+    static boolean touches(Snapshot before, Snapshot after, String path) {
+        String dir = path + "/";
+        boolean[] changed = {false};
+        Snapshot.join((file, ids) -> {
+            if (!changed[0] && (file.equals(path) || file.startsWith(dir))
+                    && (ids[0] == null || !ids[0].equals(ids[1]))) {
+                changed[0] = true;
+            }
+        }, before, after);
+        return changed[0];
+    }
+
+    /** Return the Bloom filter of PATHS. */
+    private static byte[] filterOf(Set<String> paths) {
+        if (paths.size() > MAX_CHANGED_PATHS) {
+            return new byte[] {(byte) 0xff};
+        }
+        byte[] filter = new byte[(paths.size() * BITS_PER_ENTRY + 7) / 8];
+        int bits = filter.length * 8;
+        for (String path: paths) {
+            byte[] key = path.getBytes(StandardCharsets.UTF_8);
+            int h1 = murmur3(key, 0x293ae76f);
+            int h2 = murmur3(key, 0x7e646e2c);
+            for (int k = 0; k < HASH_COUNT; ++k) {
+                int bit = Integer.remainderUnsigned(h1 + k * h2, bits);
+                filter[bit / 8] |= (byte) (1 << (bit % 8));
+            }
+        }
+        return filter;
+    }
+
+    /** The 32-bit MurmurHash3 of DATA with SEED. */
+    private static int murmur3(byte[] data, int seed) {
+        int h = seed;
+        int blocks = data.length / 4;
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < blocks; ++i) {
+            int k = buffer.getInt(i * 4);
+            k *= 0xcc9e2d51;
+            k = Integer.rotateLeft(k, 15);
+            k *= 0x1b873593;
+            h ^= k;
+            h = Integer.rotateLeft(h, 13);
+            h = h * 5 + 0xe6546b64;
+        }
+        int k = 0;
+        int tail = blocks * 4;
+        int remaining = data.length & 3;
+        if (remaining >= 3) {
+            k ^= (data[tail + 2] & 0xff) << 16;
+        }
+        if (remaining >= 2) {
+            k ^= (data[tail + 1] & 0xff) << 8;
+        }
+        if (remaining >= 1) {
+            k ^= data[tail] & 0xff;
+            k *= 0xcc9e2d51;
+            k = Integer.rotateLeft(k, 15);
+            k *= 0x1b873593;
+            h ^= k;
+        }
+        h ^= data.length;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private int parentsOffset() {
+        return HEADER_SIZE + count * ObjectId.RAW_LENGTH;
+    }
+
+    private int filterEndsOffset() {
+        return parentsOffset() + count * 8;
+    }
+
+    private int compareRaw(int position, byte[] target) {
+        for (int k = 0; k < target.length; ++k) {
+            int cmp = Integer.compare(graph.get(position + k) & 0xff, target[k] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+}
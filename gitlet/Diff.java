@@ -0,0 +1,471 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Line-level differences between two versions of a file, printed in the unified format.
+ *
+ *  Both versions are split into lines, and every distinct line is interned to a small integer,
+ *  so the algorithms compare ints instead of bytes. The common prefix and suffix are trimmed
+ *  before anything else. Two algorithms are available:
+ *  MYERS finds a shortest edit script with the linear-space divide-and-conquer variant of Myers' algorithm;
+ *  HISTOGRAM anchors on the longest run of common lines that are rarest in the old version, recurses
+ *  on both sides of it, and falls back to Myers when no line is rare enough.
+ *  Both produce their edits from the start of the files to the end, and the edits are turned into
+ *  hunks as they come, so only the current hunk is ever held in memory.
+ */
+class Diff {
+
+    enum Algorithm { MYERS, HISTOGRAM }
+
+    /** Number of unchanged lines printed around each change. */
+    static final int CONTEXT = 3;
+
+    /** Lines occurring more often than this in the old version are not used as histogram anchors. */
+    private static final int MAX_CHAIN = 64;
+
+    /** Recursion depth past which the histogram algorithm hands over to Myers. */
+    private static final int MAX_DEPTH = 64;
+
+    /** Print the differences between OLDCONTENT and NEWCONTENT, the versions of PATH,
+     *  with ALGORITHM to OUT. A null content stands for a file that does not exist. */
+    static void diffFile(String path, byte[] oldContent, byte[] newContent, Algorithm algorithm, PrintStream out) {
+        diffFile(path, null, oldContent, newContent, algorithm, out);
+    }
+
+    /** Print the differences between OLDCONTENT, the contents of RENAME.from, and NEWCONTENT, the contents of
+     *  RENAME.to, with ALGORITHM to OUT, under a header telling that the file was renamed or copied.
+     *  A null RENAME stands for two versions of PATH. */
+    static void diffFile(String path, RenameDetector.Rename rename, byte[] oldContent, byte[] newContent,
+                         Algorithm algorithm, PrintStream out) {
+        String oldPath = rename == null ? path : rename.from;
+        String newPath = rename == null ? path : rename.to;
+        out.println("diff --gitlet a/" + oldPath + " b/" + newPath);
+        if (rename != null) {
+            String relation = rename.copy ? "copy" : "rename";
+            out.println("similarity index " + rename.score + "%");
+            out.println(relation + " from " + oldPath);
+            out.println(relation + " to " + newPath);
+            if (Arrays.equals(oldContent, newContent)) {
+                return;
+            }
+        } else if (oldContent == null) {
+            out.println("new file");
+        } else if (newContent == null) {
+            out.println("deleted file");
+        }
+        if (isBinary(oldContent) || isBinary(newContent)) {
+            out.println("Binary files " + (oldContent == null ? "/dev/null" : "a/" + oldPath) + " and "
+                    + (newContent == null ? "/dev/null" : "b/" + newPath) + " differ");
+            return;
+        }
+        out.println("--- " + (oldContent == null ? "/dev/null" : "a/" + oldPath));
+        out.println("+++ " + (newContent == null ? "/dev/null" : "b/" + newPath));
+
+        Lines a = new Lines(oldContent == null ? new byte[0] : oldContent);
+        Lines b = new Lines(newContent == null ? new byte[0] : newContent);
+        Map<Line, Integer> ids = new HashMap<>();
+        int[] aIds = a.intern(ids);
+        int[] bIds = b.intern(ids);
+        HunkWriter writer = new HunkWriter(a, b, out);
+        new Engine(aIds, bIds, writer).run(algorithm);
+        writer.finish();
+    }
+
+    /** Return the edits turning the lines A into the lines B, both given as line IDs, as {a0, a1, b0, b1}
+     *  arrays: lines [a0, a1) of A are replaced with lines [b0, b1) of B. The edits are in order. */
+    static List<int[]> edits(int[] a, int[] b, Algorithm algorithm) {
+        List<int[]> edits = new ArrayList<>();
+        new Engine(a, b, (a0, a1, b0, b1) -> edits.add(new int[] {a0, a1, b0, b1})).run(algorithm);
+        return edits;
+    }
+
+    /** Whether CONTENT looks like binary data, that is, has a NUL byte in its first 8000 bytes. */
+    static boolean isBinary(byte[] content) {
+        if (content == null) {
+            return false;
+        }
+        for (int i = 0; i < Math.min(content.length, 8000); ++i) {
+            if (content[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** A line of a file, including its terminating newline if it has one. */
+    static final class Line {
+        private final byte[] buffer;
+        private final int start;
+        private final int end;
+        private final int hash;
+
+        Line(byte[] buffer, int start, int end) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+            int h = 1;
+            for (int i = start; i < end; ++i) {
+                h = 31 * h + buffer[i];
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Line)) {
+                return false;
+            }
+            Line other = (Line) o;
+            return hash == other.hash
+                    && Arrays.equals(buffer, start, end, other.buffer, other.start, other.end);
+        }
+    }
+
+    /** The lines of a file, as offsets into its contents. */
+    static final class Lines {
+        private final byte[] content;
+        /** Line i spans [starts[i], starts[i + 1]). */
+        private final int[] starts;
+        private final int count;
+
+        Lines(byte[] content) {
+            this.content = content;
+            int n = 0;
+            for (byte c: content) {
+                if (c == '\n') {
+                    n += 1;
+                }
+            }
+            if (content.length > 0 && content[content.length - 1] != '\n') {
+                n += 1;
+            }
+            count = n;
+            starts = new int[n + 1];
+            int line = 1;
+            for (int i = 0; i < content.length && line < n; ++i) {
+                if (content[i] == '\n') {
+                    starts[line++] = i + 1;
+                }
+            }
+            starts[n] = content.length;
+        }
+
+        /** Map every line to its ID in IDS, adding the lines not seen yet. */
+        int[] intern(Map<Line, Integer> ids) {
+            int[] result = new int[count];
+            for (int i = 0; i < count; ++i) {
+                Line line = new Line(content, starts[i], starts[i + 1]);
+                Integer id = ids.putIfAbsent(line, ids.size());
+                result[i] = id == null ? ids.size() - 1 : id;
+            }
+            return result;
+        }
+
+        /** Number of lines. */
+        int count() {
+            return count;
+        }
+
+        /** Write lines [FROM, TO) to OUT as they are, adding a newline after the last one if it has none
+         *  and NEWLINE is true. */
+        void write(ByteArrayOutputStream out, int from, int to, boolean newline) {
+            if (from >= to) {
+                return;
+            }
+            out.write(content, starts[from], starts[to] - starts[from]);
+            if (newline && content[starts[to] - 1] != '\n') {
+                out.write('\n');
+            }
+        }
+
+        /** Print line I preceded by PREFIX, with a marker if it has no newline. */
+        void print(PrintStream out, char prefix, int i) {
+            out.print(prefix);
+            int end = starts[i + 1];
+            boolean newline = end > starts[i] && content[end - 1] == '\n';
+            out.write(content, starts[i], (newline ? end - 1 : end) - starts[i]);
+            out.print('\n');
+            if (!newline) {
+                out.println("\\ No newline at end of file");
+            }
+        }
+    }
+
+    /** Receives the edits of a diff in order: lines [A0, A1) of the old version are replaced with
+     *  lines [B0, B1) of the new version. */
+    private interface EditSink {
+        void edit(int a0, int a1, int b0, int b1);
+    }
+
+    /** Computes the edits between two sequences of line IDs. */
+    private static final class Engine {
+        private final int[] a;
+        private final int[] b;
+        private final EditSink sink;
+
+        /** The forward and backward frontiers of Myers' algorithm, shared by all the recursive calls. */
+        private int[] forward;
+        private int[] backward;
+        private int offset;
+
+        Engine(int[] a, int[] b, EditSink sink) {
+            this.a = a;
+            this.b = b;
+            this.sink = sink;
+        }
+
+        void run(Algorithm algorithm) {
+            if (algorithm == Algorithm.MYERS) {
+                myers(0, a.length, 0, b.length);
+            } else {
+                histogram(0, a.length, 0, b.length, 0);
+            }
+        }
+
+        /** Diff lines [A0, A1) against lines [B0, B1) with the linear-space variant of Myers' algorithm:
+         *  find the middle snake of a shortest edit script, then diff the parts before and after it. */
+        private void myers(int a0, int a1, int b0, int b1) {
+            while (a0 < a1 && b0 < b1 && a[a0] == b[b0]) {
+                a0 += 1;
+                b0 += 1;
+            }
+            while (a0 < a1 && b0 < b1 && a[a1 - 1] == b[b1 - 1]) {
+                a1 -= 1;
+                b1 -= 1;
+            }
+            if (a0 == a1 || b0 == b1) {
+                if (a0 < a1 || b0 < b1) {
+                    sink.edit(a0, a1, b0, b1);
+                }
+                return;
+            }
+            int[] snake = middleSnake(a0, a1, b0, b1);
+            myers(a0, snake[0], b0, snake[1]);
+            myers(snake[2], a1, snake[3], b1);
+        }
+
+        /** Return {x, y, u, v}: a snake from (x, y) to (u, v) lying in the middle of a shortest path
+         *  from (A0, B0) to (A1, B1). The ranges must differ at both ends. */
+        private int[] middleSnake(int a0, int a1, int b0, int b1) {
+            int n = a1 - a0;
+            int m = b1 - b0;
+            int delta = n - m;
+            boolean odd = (delta & 1) != 0;
+            int max = (n + m + 1) / 2;
+            if (forward == null) {
+                offset = (a.length + b.length + 1) / 2 + 1;
+                forward = new int[2 * offset + 1];
+                backward = new int[2 * offset + 1];
+            }
+            forward[offset + 1] = 0;
+            backward[offset + 1] = 0;
+
+            for (int d = 0; d <= max; ++d) {
+                // Forward paths of d edits, along diagonals k = x - y
+                for (int k = -d; k <= d; k += 2) {
+                    int x;
+                    if (k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])) {
+                        x = forward[offset + k + 1];
+                    } else {
+                        x = forward[offset + k - 1] + 1;
+                    }
+                    int y = x - k;
+                    int startX = x;
+                    int startY = y;
+                    while (x < n && y < m && a[a0 + x] == b[b0 + y]) {
+                        x += 1;
+                        y += 1;
+                    }
+                    forward[offset + k] = x;
+                    // The backward path on the same diagonal has walked c = delta - k in reversed coordinates
+                    int c = delta - k;
+                    if (odd && c >= -(d - 1) && c <= d - 1 && x + backward[offset + c] >= n) {
+                        return new int[] {a0 + startX, b0 + startY, a0 + x, b0 + y};
+                    }
+                }
+                // Backward paths of d edits, walking the reversed ranges
+                for (int c = -d; c <= d; c += 2) {
+                    int x;
+                    if (c == -d || (c != d && backward[offset + c - 1] < backward[offset + c + 1])) {
+                        x = backward[offset + c + 1];
+                    } else {
+                        x = backward[offset + c - 1] + 1;
+                    }
+                    int y = x - c;
+                    int startX = x;
+                    int startY = y;
+                    while (x < n && y < m && a[a1 - 1 - x] == b[b1 - 1 - y]) {
+                        x += 1;
+                        y += 1;
+                    }
+                    backward[offset + c] = x;
+                    int k = delta - c;
+                    if (!odd && k >= -d && k <= d && x + forward[offset + k] >= n) {
+                        return new int[] {a1 - x, b1 - y, a1 - startX, b1 - startY};
+                    }
+                }
+            }
+            throw new IllegalStateException("no middle snake");
+        }
+
+        /** Diff lines [A0, A1) against lines [B0, B1) with the histogram algorithm, at recursion depth DEPTH. */
+        private void histogram(int a0, int a1, int b0, int b1, int depth) {
+            while (a0 < a1 && b0 < b1 && a[a0] == b[b0]) {
+                a0 += 1;
+                b0 += 1;
+            }
+            while (a0 < a1 && b0 < b1 && a[a1 - 1] == b[b1 - 1]) {
+                a1 -= 1;
+                b1 -= 1;
+            }
+            if (a0 == a1 || b0 == b1) {
+                if (a0 < a1 || b0 < b1) {
+                    sink.edit(a0, a1, b0, b1);
+                }
+                return;
+            }
+            if (depth > MAX_DEPTH) {
+                myers(a0, a1, b0, b1);
+                return;
+            }
+
+            // The occurrences of every line of the old range
+            Map<Integer, List<Integer>> occurrences = new HashMap<>();
+            for (int i = a0; i < a1; ++i) {
+                occurrences.computeIfAbsent(a[i], id -> new ArrayList<>()).add(i);
+            }
+
+            // Find the longest common run whose rarest line is the rarest possible
+            int bestCount = MAX_CHAIN + 1;
+            int bestLength = 0;
+            int bestA = 0;
+            int bestB = 0;
+            for (int j = b0; j < b1; ++j) {
+                List<Integer> positions = occurrences.get(b[j]);
+                if (positions == null || positions.size() > MAX_CHAIN || positions.size() > bestCount) {
+                    continue;
+                }
+                for (int i: positions) {
+                    int start = 0;
+                    int count = positions.size();
+                    while (i - start > a0 && j - start > b0 && a[i - start - 1] == b[j - start - 1]) {
+                        start += 1;
+                        count = Math.min(count, occurrences.get(a[i - start]).size());
+                    }
+                    int end = 1;
+                    while (i + end < a1 && j + end < b1 && a[i + end] == b[j + end]) {
+                        count = Math.min(count, occurrences.get(a[i + end]).size());
+                        end += 1;
+                    }
+                    int length = start + end;
+                    if (count < bestCount || (count == bestCount && length > bestLength)) {
+                        bestCount = count;
+                        bestLength = length;
+                        bestA = i - start;
+                        bestB = j - start;
+                    }
+                }
+            }
+
+            if (bestLength == 0) {
+                if (hasCommonLine(occurrences, b0, b1)) {
+                    // Only frequent lines in common: let Myers sort them out
+                    myers(a0, a1, b0, b1);
+                } else {
+                    sink.edit(a0, a1, b0, b1);
+                }
+                return;
+            }
+            histogram(a0, bestA, b0, bestB, depth + 1);
+            histogram(bestA + bestLength, a1, bestB + bestLength, b1, depth + 1);
+        }
+
+        private boolean hasCommonLine(Map<Integer, List<Integer>> occurrences, int b0, int b1) {
+            for (int j = b0; j < b1; ++j) {
+                if (occurrences.containsKey(b[j])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /** Groups the edits into hunks with CONTEXT lines around them, and prints each hunk as soon as
+     *  the next edit is too far away to join it. */
+    private static final class HunkWriter implements EditSink {
+        private final Lines a;
+        private final Lines b;
+        private final PrintStream out;
+
+        /** The edits of the current hunk, as {a0, a1, b0, b1}. */
+        private final List<int[]> hunk = new ArrayList<>();
+
+        HunkWriter(Lines a, Lines b, PrintStream out) {
+            this.a = a;
+            this.b = b;
+            this.out = out;
+        }
+
+        @Override
+        public void edit(int a0, int a1, int b0, int b1) {
+            if (!hunk.isEmpty() && a0 - hunk.get(hunk.size() - 1)[1] > 2 * CONTEXT) {
+                flush();
+            }
+            hunk.add(new int[] {a0, a1, b0, b1});
+        }
+
+        void finish() {
+            if (!hunk.isEmpty()) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            int[] first = hunk.get(0);
+            int[] last = hunk.get(hunk.size() - 1);
+            int aStart = Math.max(0, first[0] - CONTEXT);
+            int bStart = first[2] - (first[0] - aStart);
+            int aEnd = Math.min(a.count, last[1] + CONTEXT);
+            int bEnd = last[3] + (aEnd - last[1]);
+            out.println("@@ -" + range(aStart, aEnd) + " +" + range(bStart, bEnd) + " @@");
+
+            int i = aStart;
+            for (int[] edit: hunk) {
+                for (; i < edit[0]; ++i) {
+                    a.print(out, ' ', i);
+                }
+                for (int k = edit[0]; k < edit[1]; ++k) {
+                    a.print(out, '-', k);
+                }
+                for (int k = edit[2]; k < edit[3]; ++k) {
+                    b.print(out, '+', k);
+                }
+                i = edit[1];
+            }
+            for (; i < aEnd; ++i) {
+                a.print(out, ' ', i);
+            }
+            hunk.clear();
+        }
+
+        /** Format the lines [START, END) as a hunk range: the first line (counted from 1), then the count. */
+        private static String range(int start, int end) {
+            int count = end - start;
+            if (count == 0) {
+                return start + ",0";
+            }
+            return (start + 1) + (count == 1 ? "" : "," + count);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import static gitlet.Utils.*;
+
+/** Writes branches as a fast-import stream, which FastImport, or git fast-import, reads back.
+ *
+ *  The commits reachable from the branches are written parents first, each preceded by the blobs it introduces,
+ *  and followed by its changes against its first parent as M and D lines; the initial commit is left out, its
+ *  children being written as root commits. Blobs are copied from the object store straight into the stream
+ *  with copyTo. Every blob and commit gets a mark, so each is written once, and a reset line per branch ends
+ *  the stream.
+ */
+class FastExport {
+
+    private final ObjectStore objects = RepoHelper.objectStore();
+    private final OutputStream out;
+    private final WritableByteChannel channel;
+
+    /** The marks of the objects written so far. */
+    private final Map<ObjectId, Integer> marks = new HashMap<>();
+
+    /** The commits without parents, which are not written. */
+    private final Set<ObjectId> roots = new HashSet<>();
+
+    /** The last commit written, and its snapshot, which is usually the parent of the next one. */
+    private ObjectId lastCommit;
+    private Snapshot lastSnapshot;
+
+    /** An export to OUT. */
+    FastExport(OutputStream out) {
+        this.out = new BufferedOutputStream(out, 1 << 16);
+        this.channel = Channels.newChannel(this.out);
+    }
+
+    /** Write the history of the branches BRANCHNAMES, which must exist. */
+    void run(List<String> branchNames) {
+        Refs refs = RepoHelper.refs();
+        try {
+            for (String branchName: branchNames) {
+                writeHistory(branchName, refs.read(branchName));
+            }
+            for (String branchName: branchNames) {
+                ObjectId tip = refs.read(branchName);
+                writeLine("reset refs/heads/" + branchName);
+                writeLine("from " + ref(tip));
+                writeLine("");
+            }
+            writeLine("done");
+            out.flush();
+        } catch (IOException e) {
+            throw error(e.getMessage());
+        }
+    }
+
+    /** Write the commits reachable from TIP not written yet, parents first, as commits of BRANCHNAME. */
+    private void writeHistory(String branchName, ObjectId tip) throws IOException {
+        // A commit is pushed, then pushed again above its parents once it has been read; it is written
+        // when it comes back to the top of the stack the second time
+        Deque<ObjectId> stack = new ArrayDeque<>();
+        Map<ObjectId, Commit> expanded = new HashMap<>();
+        stack.push(tip);
+        while (!stack.isEmpty()) {
+            ObjectId commitHash = stack.pop();
+            if (marks.containsKey(commitHash) || roots.contains(commitHash)) {
+                continue;
+            }
+            Commit commit = expanded.remove(commitHash);
+            if (commit != null) {
+                writeCommit(branchName, commitHash, commit);
+                continue;
+            }
+            commit = objects.readObject(commitHash, Commit.class);
+            if (commit.getParent() == null) {
+                roots.add(commitHash);
+                continue;
+            }
+            expanded.put(commitHash, commit);
+            stack.push(commitHash);
+            if (commit.getSecondParent() != null) {
+                stack.push(commit.getSecondParent());
+            }
+            stack.push(commit.getParent());
+        }
+    }
+
+    /** Write the blobs COMMIT introduces, then COMMIT, whose ID is COMMITHASH, as a commit of BRANCHNAME. */
+    private void writeCommit(String branchName, ObjectId commitHash, Commit commit) throws IOException {
+        ObjectId parent = commit.getParent();
+        Snapshot parentSnapshot = parent.equals(lastCommit) ? lastSnapshot
+                : objects.readObject(parent, Commit.class).getSnapshot();
+        List<String> changes = new ArrayList<>();
+        Snapshot.join((fileName, ids) -> {
+            if (ids[1] == null) {
+                changes.add("D " + quote(fileName));
+            } else if (!Objects.equals(ids[0], ids[1])) {
+                changes.add("M 100644 " + ids[1] + " " + quote(fileName));
+            }
+        }, parentSnapshot, commit.getSnapshot());
+
+        // Replace the IDs of the blobs by marks, writing the blobs not written yet
+        for (int i = 0; i < changes.size(); ++i) {
+            String change = changes.get(i);
+            if (change.startsWith("M ")) {
+                ObjectId blobHash = ObjectId.fromHex(change.substring(9, 9 + ObjectId.HEX_LENGTH));
+                if (!marks.containsKey(blobHash)) {
+                    writeBlob(blobHash);
+                }
+                changes.set(i, "M 100644 :" + marks.get(blobHash) + change.substring(9 + ObjectId.HEX_LENGTH));
+            }
+        }
+
+        marks.put(commitHash, marks.size() + 1);
+        byte[] message = commit.getMessage().getBytes(StandardCharsets.UTF_8);
+        if (roots.contains(parent)) {
+            // Start the branch over, or the root commit would continue it
+            writeLine("reset refs/heads/" + branchName);
+        }
+        writeLine("commit refs/heads/" + branchName);
+        writeLine("mark :" + marks.get(commitHash));
+        writeLine("committer gitlet <gitlet> " + commit.getTime() / 1000 + " +0000");
+        writeLine("data " + message.length);
+        out.write(message);
+        writeLine("");
+        if (!roots.contains(parent)) {
+            writeLine("from " + ref(parent));
+        }
+        if (commit.getSecondParent() != null) {
+            writeLine("merge " + ref(commit.getSecondParent()));
+        }
+        for (String change: changes) {
+            writeLine(change);
+        }
+        writeLine("");
+        lastCommit = commitHash;
+        lastSnapshot = commit.getSnapshot();
+    }
+
+    /** Write blob BLOBHASH, copied from the object store, under a new mark. */
+    private void writeBlob(ObjectId blobHash) throws IOException {
+        marks.put(blobHash, marks.size() + 1);
+        writeLine("blob");
+        writeLine("mark :" + marks.get(blobHash));
+        writeLine("data " + objects.length(blobHash));
+        objects.copyTo(blobHash, channel);
+        writeLine("");
+    }
+
+    /** The mark of object ID, or its ID if it has none. */
+    private String ref(ObjectId id) {
+        Integer mark = marks.get(id);
+        return mark == null ? id.toString() : ":" + mark;
+    }
+
+    private void writeLine(String line) throws IOException {
+        out.write(line.getBytes(StandardCharsets.UTF_8));
+        out.write('\n');
+    }
+
+    /** Return PATH, C-style quoted if it starts with a quote or holds a newline, which FastImport.unquote() reverts. */
+    static String quote(String path) {
+        if (!path.startsWith("\"") && path.indexOf('\n') < 0) {
+            return path;
+        }
+        return "\"" + path.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+}
@@ -0,0 +1,429 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static gitlet.Utils.*;
+
+/** Imports history from a fast-import stream, the line-oriented format of git fast-import, of which it reads
+ *  the commands blob, commit (with mark, author, committer, data, from, merge, deleteall, M and D), reset,
+ *  done, and ignores progress, feature, option and checkpoint.
+ *
+ *  The objects are streamed straight into a new pack as they are read, never into the working directory or
+ *  the staging area, and the pack is finished every PACK_OBJECTS objects. A commit is built from the snapshot of
+ *  its first parent; the snapshots of the last commits are kept in memory, and the pack being written is only
+ *  finished early when a commit needs an older parent from it. The branches, the global log and the commit
+ *  graph are updated once, at the end. Root commits are given the initial commit as parent, so that a stream
+ *  written by FastExport imports back into the same commits.
+ */
+class FastImport {
+
+    /** Number of objects past which the pack being written is finished and a new one started. */
+    static final int PACK_OBJECTS = 1 << 20;
+
+    /** Number of snapshots of recent commits kept in memory. */
+    static final int CACHED_SNAPSHOTS = 256;
+
+    private final InputStream in;
+    private final ObjectStore objects = RepoHelper.objectStore();
+    /** The parent of root commits. It is the same in every repository created in the same time zone,
+     *  and is added to the repository if it has another one. */
+    private final ObjectId initialCommit =
+            new Commit("initial commit", null, Snapshot.EMPTY, null).getHash();
+
+    /** The objects named by marks. */
+    private final Map<Integer, ObjectId> marks = new HashMap<>();
+
+    /** The new tips of the branches, by name. */
+    private final Map<String, ObjectId> branches = new LinkedHashMap<>();
+
+    /** The snapshots of the last commits imported, least recent first. */
+    private final LinkedHashMap<ObjectId, Snapshot> snapshots = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ObjectId, Snapshot> eldest) {
+            return size() > CACHED_SNAPSHOTS;
+        }
+    };
+
+    /** The entries of the global log of the imported commits, oldest first. */
+    private final List<String> logMessages = new ArrayList<>();
+
+    private final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream();
+    private PackWriter writer = new PackWriter(RepoHelper.PACKS);
+    private long lineNumber;
+    private int blobCount;
+    private int commitCount;
+
+    /** An import of the stream IN. */
+    FastImport(InputStream in) {
+        this.in = new BufferedInputStream(in, 1 << 16);
+        snapshots.put(initialCommit, Snapshot.EMPTY);
+        Commit initial = new Commit("initial commit", null, Snapshot.EMPTY, null);
+        add(initial.getHash(), serialize(initial));
+    }
+
+    /** Read the whole stream, then move the branches and write the global log and the commit graph.
+     *  Throws IllegalArgumentException if the stream is malformed, in which case no branch is moved. */
+    void run() {
+        long start = System.nanoTime();
+        try {
+            String line = readLine();
+            while (line != null) {
+                String command = line.split(" ", 2)[0];
+                switch (command) {
+                    case "blob":
+                        line = parseBlob();
+                        break;
+                    case "commit":
+                        line = parseCommit(branchName(argument(line)));
+                        break;
+                    case "reset":
+                        line = parseReset(branchName(argument(line)));
+                        break;
+                    case "done":
+                        line = null;
+                        break;
+                    case "":
+                    case "progress":
+                    case "feature":
+                    case "option":
+                    case "checkpoint":
+                        line = readLine();
+                        break;
+                    default:
+                        throw syntaxError("unsupported command " + command);
+                }
+            }
+        } catch (IOException e) {
+            throw error(e.getMessage());
+        } finally {
+            // The objects read so far are kept; they are unreachable until a branch points to them
+            writer.finish();
+            RepoHelper.closePacks();
+        }
+
+        Refs refs = RepoHelper.refs();
+        for (Map.Entry<String, ObjectId> branch: branches.entrySet()) {
+            if (branch.getValue() == null) {
+                continue;
+            }
+            refs.update(branch.getKey(), branch.getValue(), "fast-import");
+        }
+        if (!logMessages.isEmpty()) {
+            StringBuilder log = new StringBuilder();
+            for (int i = logMessages.size() - 1; i >= 0; --i) {
+                log.append(logMessages.get(i)).append('\n');
+            }
+            File logFile = join(".gitlet", "log");
+            writeContents(logFile, log + readContentsAsString(logFile));
+        }
+        List<ObjectId> tips = new ArrayList<>();
+        for (String branchName: refs.names()) {
+            tips.add(refs.read(branchName));
+        }
+        CommitGraph.write(tips);
+
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+        System.out.printf("Imported %d blobs and %d commits in %.0f ms: %.0f objects/s.%n",
+                blobCount, commitCount, seconds * 1e3, (blobCount + commitCount) / seconds);
+    }
+
+    /** Read a blob: an optional mark, then its data. Return the next line. */
+    private String parseBlob() throws IOException {
+        String line = readLine();
+        int mark = -1;
+        if (line != null && line.startsWith("mark ")) {
+            mark = parseMark(argument(line));
+            line = readLine();
+        }
+        if (line != null && line.startsWith("original-oid ")) {
+            line = readLine();
+        }
+        ObjectId blobHash = storeBlob(readData(line));
+        if (mark >= 0) {
+            marks.put(mark, blobHash);
+        }
+        return readLine();
+    }
+
+    /** Read a commit on the branch BRANCHNAME, up to the blank line or command that ends it. Return that line. */
+    private String parseCommit(String branchName) throws IOException {
+        String line = readLine();
+        int mark = -1;
+        if (line != null && line.startsWith("mark ")) {
+            mark = parseMark(argument(line));
+            line = readLine();
+        }
+        if (line != null && line.startsWith("original-oid ")) {
+            line = readLine();
+        }
+        if (line != null && line.startsWith("author ")) {
+            line = readLine();
+        }
+        Date date = new Date();
+        if (line != null && line.startsWith("committer ")) {
+            date = parseDate(line);
+            line = readLine();
+        }
+        String message = new String(readData(line), StandardCharsets.UTF_8);
+        if (message.endsWith("\n")) {
+            message = message.substring(0, message.length() - 1);
+        }
+
+        line = readLine();
+        ObjectId parent;
+        if (line != null && line.startsWith("from ")) {
+            parent = resolveCommit(argument(line));
+            line = readLine();
+        } else {
+            // Like git, a commit without "from" continues its branch, if it exists
+            parent = branchTip(branchName);
+        }
+        if (parent == null) {
+            parent = initialCommit;
+        }
+        ObjectId secondParent = null;
+        if (line != null && line.startsWith("merge ")) {
+            secondParent = resolveCommit(argument(line));
+            line = readLine();
+            if (line != null && line.startsWith("merge ")) {
+                throw syntaxError("a commit has at most two parents in gitlet");
+            }
+        }
+
+        Snapshot.Builder snapshot = snapshotOf(parent).edit();
+        while (line != null && !line.isEmpty()) {
+            if (line.equals("deleteall")) {
+                snapshot = Snapshot.builder();
+            } else if (line.startsWith("M ")) {
+                String[] fields = line.split(" ", 4);
+                if (fields.length < 4) {
+                    throw syntaxError("malformed file change " + line);
+                }
+                if (!fields[1].matches("(100)?(644|755)")) {
+                    throw syntaxError("unsupported file mode " + fields[1]);
+                }
+                ObjectId blobHash = fields[2].equals("inline") ? storeBlob(readData(readLine()))
+                        : resolveObject(fields[2]);
+                snapshot.put(unquote(fields[3]), blobHash);
+            } else if (line.startsWith("D ")) {
+                snapshot.remove(unquote(line.substring(2)));
+            } else {
+                break;
+            }
+            line = readLine();
+        }
+
+        Commit commit = new Commit(message, parent, snapshot.build(), secondParent, date);
+        byte[] contents = serialize(commit);
+        ObjectId commitHash = RepoHelper.hashObject(contents);
+        add(commitHash, contents);
+        commitCount += 1;
+        if (mark >= 0) {
+            marks.put(mark, commitHash);
+        }
+        branches.put(branchName, commitHash);
+        snapshots.put(commitHash, commit.getSnapshot());
+        logMessages.add(commit.getLogMessage());
+        return line;
+    }
+
+    /** Read a reset of the branch BRANCHNAME, with an optional "from". Without it, the next commit of the
+     *  branch starts it over as a root commit. Return the next line. */
+    private String parseReset(String branchName) throws IOException {
+        String line = readLine();
+        if (line == null || !line.startsWith("from ")) {
+            branches.put(branchName, null);
+            return line;
+        }
+        branches.put(branchName, resolveCommit(argument(line)));
+        return readLine();
+    }
+
+    /** Return the snapshot of COMMITHASH, finishing the pack being written first if it holds that commit. */
+    private Snapshot snapshotOf(ObjectId commitHash) {
+        Snapshot snapshot = snapshots.get(commitHash);
+        if (snapshot == null) {
+            if (writer.contains(commitHash)) {
+                writer.finish();
+                RepoHelper.closePacks();
+                writer = new PackWriter(RepoHelper.PACKS);
+            }
+            snapshot = objects.readObject(commitHash, Commit.class).getSnapshot();
+            snapshots.put(commitHash, snapshot);
+        }
+        return snapshot;
+    }
+
+    /** Save CONTENTS as a blob, and return its hash. */
+    private ObjectId storeBlob(byte[] contents) {
+        ObjectId blobHash = RepoHelper.hashObject(contents);
+        add(blobHash, contents);
+        blobCount += 1;
+        return blobHash;
+    }
+
+    /** Add object ID to the pack being written, unless the repository already has it. */
+    private void add(ObjectId id, byte[] contents) {
+        if (writer.contains(id) || objects.has(id)) {
+            return;
+        }
+        writer.add(id, contents);
+        if (writer.size() >= PACK_OBJECTS) {
+            writer.finish();
+            RepoHelper.closePacks();
+            writer = new PackWriter(RepoHelper.PACKS);
+        }
+    }
+
+    /** Return the commit named by REF: a mark, a commit ID, or a branch. */
+    private ObjectId resolveCommit(String ref) {
+        if (ref.startsWith(":") || ObjectId.isHex(ref)) {
+            return resolveObject(ref);
+        }
+        ObjectId tip = branchTip(branchName(ref));
+        if (tip == null) {
+            throw syntaxError("no such branch " + ref);
+        }
+        return tip;
+    }
+
+    /** Return the object named by REF: a mark or an object ID. */
+    private ObjectId resolveObject(String ref) {
+        if (ref.startsWith(":")) {
+            ObjectId id = marks.get(parseMark(ref));
+            if (id == null) {
+                throw syntaxError("undefined mark " + ref);
+            }
+            return id;
+        }
+        if (!ObjectId.isHex(ref)) {
+            throw syntaxError("malformed object name " + ref);
+        }
+        ObjectId id = ObjectId.fromHex(ref);
+        if (!writer.contains(id) && !objects.has(id)) {
+            throw syntaxError("no such object " + ref);
+        }
+        return id;
+    }
+
+    /** Return the tip of the branch BRANCHNAME, as imported so far, or null if there is no such branch. */
+    private ObjectId branchTip(String branchName) {
+        if (branches.containsKey(branchName)) {
+            return branches.get(branchName);
+        }
+        return RepoHelper.refs().read(branchName);
+    }
+
+    /** Read the data announced by LINE, "data [length]", followed by an optional newline. */
+    private byte[] readData(String line) throws IOException {
+        if (line == null || !line.startsWith("data ")) {
+            throw syntaxError("expected data");
+        }
+        int length;
+        try {
+            length = Integer.parseInt(argument(line));
+        } catch (NumberFormatException e) {
+            throw syntaxError("unsupported data length " + argument(line));
+        }
+        byte[] data = in.readNBytes(length);
+        if (data.length < length) {
+            throw syntaxError("truncated data");
+        }
+        in.mark(1);
+        if (in.read() != '\n') {
+            in.reset();
+        }
+        return data;
+    }
+
+    /** Read a line, without its newline, or return null at the end of the stream. */
+    private String readLine() throws IOException {
+        lineBuffer.reset();
+        int b = in.read();
+        if (b == -1) {
+            return null;
+        }
+        while (b != -1 && b != '\n') {
+            lineBuffer.write(b);
+            b = in.read();
+        }
+        lineNumber += 1;
+        return lineBuffer.toString(StandardCharsets.UTF_8);
+    }
+
+    /** The date of a line "committer [name] <[email]> [seconds] [time zone]". */
+    private Date parseDate(String line) {
+        String[] fields = line.split(" ");
+        try {
+            return new Date(Long.parseLong(fields[fields.length - 2]) * 1000);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw syntaxError("malformed committer " + line);
+        }
+    }
+
+    private int parseMark(String mark) {
+        try {
+            return Integer.parseInt(mark.substring(1));
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            throw syntaxError("malformed mark " + mark);
+        }
+    }
+
+    /** The name of the branch REF, like "master" for "refs/heads/master". */
+    private static String branchName(String ref) {
+        return ref.startsWith("refs/heads/") ? ref.substring("refs/heads/".length()) : ref;
+    }
+
+    /** The part of LINE after its first space. */
+    private static String argument(String line) {
+        int space = line.indexOf(' ');
+        return space < 0 ? "" : line.substring(space + 1);
+    }
+
+    /** Return PATH, unquoted if it is a C-style quoted string, as written by FastExport.quote(). */
+    static String unquote(String path) {
+        if (!path.startsWith("\"")) {
+            return path;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] quoted = path.getBytes(StandardCharsets.UTF_8);
+        for (int i = 1; i < quoted.length - 1; ++i) {
+            byte b = quoted[i];
+            if (b != '\\') {
+                bytes.write(b);
+                continue;
+            }
+            i += 1;
+            switch (quoted[i]) {
+                case 'n':
+                    bytes.write('\n');
+                    break;
+                case 't':
+                    bytes.write('\t');
+                    break;
+                case '0': case '1': case '2': case '3':
+                    bytes.write(Integer.parseInt(new String(quoted, i, 3, StandardCharsets.US_ASCII), 8));
+                    i += 2;
+                    break;
+                default:
+                    bytes.write(quoted[i]);
+            }
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    private IllegalArgumentException syntaxError(String message) {
+        return new IllegalArgumentException("fast-import: line " + lineNumber + ": " + message);
+    }
+}
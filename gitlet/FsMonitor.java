@@ -0,0 +1,329 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import static gitlet.Utils.*;
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/** The filesystem monitor, which lets status and add skip the files that did not change.
+ *
+ *  "gitlet watch" runs a watcher that holds .gitlet/fsmonitor.lock and appends the relative path of
+ *  every changed file to the journal .gitlet/fsmonitor, after a first line naming its session.
+ *  The hashes of the working files are cached in .gitlet/fscache together with a token: the session
+ *  and the journal offset the cache is up to date with. Refreshing the cache then only rehashes the
+ *  paths journaled since the token. Whenever the watcher is not running, its session changed, or it
+ *  reported an overflow of events, the working directory is scanned in full instead.
+ *
+ *  The cache is only good for the .gitletignore it was computed with, so it is dropped when the ignore file
+ *  changes; the watcher then reloads it too, watches the directories it stops ignoring, and journals an overflow.
+ *
+ *  Events are delivered asynchronously, so before reading the journal a cookie file is created in
+ *  the working directory: once the watcher journals the cookie, every earlier change is journaled too.
+ */
+class FsMonitor {
+
+    static final File JOURNAL = join(".gitlet", "fsmonitor");
+    static final File LOCK = join(".gitlet", "fsmonitor.lock");
+    static final File CACHE = join(".gitlet", "fscache");
+
+    /** The line journaled when events were lost. */
+    static final String OVERFLOW_LINE = "!overflow";
+
+    /** The prefix of cookie files. */
+    static final String COOKIE_PREFIX = ".gitlet-cookie-";
+
+    /** How long to wait for the watcher to journal a cookie, in milliseconds. */
+    private static final long COOKIE_TIMEOUT = 2000;
+
+    /** The cached hashes of the working files, valid as of journal offset OFFSET of session SESSION,
+     *  under the ignore file whose ignoreStamp() was IGNORESTAMP. */
+    private static class Cache implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String session;
+        private final long offset;
+        private final String ignoreStamp;
+        private final Snapshot snapshot;
+
+        Cache(String session, long offset, String ignoreStamp, Snapshot snapshot) {
+            this.session = session;
+            this.offset = offset;
+            this.ignoreStamp = ignoreStamp;
+            this.snapshot = snapshot;
+        }
+    }
+
+    /** Return a snapshot mapping the working files that status looks at to their hashes.
+     *  If the watcher is running, only the paths it journaled since the last call are rehashed. */
+    static Snapshot workingSnapshot() {
+        Snapshot snapshot = cachedSnapshot();
+        if (snapshot == null) {
+            snapshot = RepoHelper.hashWorkingFiles(RepoHelper.workingFiles());
+        }
+        return snapshot;
+    }
+
+    /** Like workingSnapshot(), but return null instead of scanning the working directory
+     *  when the watcher is not running. */
+    static Snapshot cachedSnapshot() {
+        long end = watcherRunning() ? syncCookie() : -1;
+        if (end < 0) {
+            CACHE.delete();
+            return null;
+        }
+        String session = readSession();
+        String ignoreStamp = ignoreStamp();
+        Cache cache = CACHE.isFile() ? readObject(CACHE, Cache.class) : null;
+
+        Snapshot snapshot = null;
+        if (cache != null && cache.session.equals(session) && cache.offset <= end
+                && cache.ignoreStamp.equals(ignoreStamp)) {
+            TreeSet<String> dirtyPaths = readJournal(cache.offset, end);
+            if (dirtyPaths != null) {
+                snapshot = refresh(cache.snapshot, dirtyPaths);
+            }
+        }
+        if (snapshot == null) {
+            snapshot = RepoHelper.hashWorkingFiles(RepoHelper.workingFiles());
+        }
+        writeObject(CACHE, new Cache(session, end, ignoreStamp, snapshot));
+        return snapshot;
+    }
+
+    /** Return the modification time and length of the ignore file, which change whenever it is edited. */
+    private static String ignoreStamp() {
+        File ignoreFile = new File(IgnoreMatcher.IGNORE_FILE);
+        return ignoreFile.isFile() ? ignoreFile.lastModified() + ":" + ignoreFile.length() : "none";
+    }
+
+    /** Rehash the DIRTYPATHS of SNAPSHOT. A dirty path that is not a file any more may have been a directory,
+     *  so the files under it are dropped; a dirty directory may have been moved in, so its files are rehashed. */
+    private static Snapshot refresh(Snapshot snapshot, TreeSet<String> dirtyPaths) {
+        IgnoreMatcher matcher = RepoHelper.ignoreMatcher();
+        Snapshot.Builder builder = snapshot.edit();
+        TreeSet<String> rehashedSet = new TreeSet<>();
+        List<String> droppedDirs = new ArrayList<>();
+        for (String path: dirtyPaths) {
+            File file = new File(path);
+            if (matcher.isIgnored(path) || !RepoHelper.inSparseCone(path)) {
+                builder.remove(path);
+            } else if (file.isFile()) {
+                rehashedSet.add(path);
+            } else {
+                builder.remove(path);
+                droppedDirs.add(path + "/");
+                if (file.isDirectory()) {
+                    rehashedSet.addAll(RepoHelper.walkFiles(path));
+                }
+            }
+        }
+        if (!droppedDirs.isEmpty()) {
+            for (String path: snapshot) {
+                for (String dir: droppedDirs) {
+                    if (path.startsWith(dir) && !rehashedSet.contains(path)) {
+                        builder.remove(path);
+                    }
+                }
+            }
+        }
+        List<String> rehashed = new ArrayList<>(rehashedSet);
+        List<ObjectId> hashes = RepoHelper.parallelMap(rehashed, path -> RepoHelper.hashObject(readContents(new File(path))));
+        for (int i = 0; i < rehashed.size(); ++i) {
+            builder.put(rehashed.get(i), hashes.get(i));
+        }
+        return builder.build();
+    }
+
+    /** Whether a watcher holds the lock of the working directory. */
+    private static boolean watcherRunning() {
+        if (!LOCK.isFile() || !JOURNAL.isFile()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(LOCK.toPath(), StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** Create a cookie file and wait until the watcher journals it.
+     *  Return the journal offset just past the cookie, or -1 on timeout. */
+    private static long syncCookie() {
+        String cookie = COOKIE_PREFIX + UUID.randomUUID();
+        File cookieFile = new File(cookie);
+        long start = JOURNAL.length();
+        try {
+            writeContents(cookieFile, "");
+            long deadline = System.currentTimeMillis() + COOKIE_TIMEOUT;
+            while (System.currentTimeMillis() < deadline) {
+                long offset = start;
+                for (String line: readLines(start, JOURNAL.length())) {
+                    offset += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                    if (line.equals(cookie)) {
+                        return offset;
+                    }
+                }
+                Thread.sleep(5);
+            }
+            return -1;
+        } catch (InterruptedException e) {
+            return -1;
+        } finally {
+            cookieFile.delete();
+        }
+    }
+
+    /** Return the session named on the first line of the journal. */
+    private static String readSession() {
+        List<String> lines = readLines(0, Math.min(JOURNAL.length(), 128));
+        return lines.isEmpty() ? "" : lines.get(0);
+    }
+
+    /** Return the paths journaled between offsets START and END, or null if the journal reports an overflow. */
+    private static TreeSet<String> readJournal(long start, long end) {
+        TreeSet<String> paths = new TreeSet<>();
+        for (String line: readLines(start, end)) {
+            if (line.equals(OVERFLOW_LINE)) {
+                return null;
+            }
+            if (!line.startsWith(COOKIE_PREFIX)) {
+                paths.add(line);
+            }
+        }
+        return paths;
+    }
+
+    /** Return the complete lines of the journal between offsets START and END. */
+    private static List<String> readLines(long start, long end) {
+        List<String> lines = new ArrayList<>();
+        if (end <= start) {
+            return lines;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(JOURNAL, "r")) {
+            byte[] bytes = new byte[(int) (end - start)];
+            file.seek(start);
+            file.readFully(bytes);
+            int lineStart = 0;
+            for (int i = 0; i < bytes.length; ++i) {
+                if (bytes[i] == '\n') {
+                    lines.add(new String(bytes, lineStart, i - lineStart, StandardCharsets.UTF_8));
+                    lineStart = i + 1;
+                }
+            }
+        } catch (IOException e) {
+            throw error(e.getMessage());
+        }
+        return lines;
+    }
+
+    /** Watch the working directory and journal the changed paths until the process is killed. */
+    static void watch() {
+        try (FileChannel lockChannel = FileChannel.open(LOCK.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            FileLock lock = lockChannel.tryLock();
+            if (lock == null) {
+                raiseError("A watcher is already running.");
+            }
+            WatchService watcher = FileSystems.getDefault().newWatchService();
+            Map<WatchKey, String> keys = new HashMap<>();
+            try (OutputStream journal = new FileOutputStream(JOURNAL)) {
+                journal.write(("session-" + UUID.randomUUID() + "\n").getBytes(StandardCharsets.UTF_8));
+                journal.flush();
+                register(watcher, keys, Paths.get("."), "", null);
+                System.out.println("Watching for changes.");
+
+                while (true) {
+                    WatchKey key = watcher.take();
+                    String prefix = keys.get(key);
+                    StringBuilder lines = new StringBuilder();
+                    for (WatchEvent<?> event: key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            lines.append(OVERFLOW_LINE).append('\n');
+                            continue;
+                        }
+                        String path = prefix + event.context();
+                        if (path.equals(IgnoreMatcher.IGNORE_FILE)) {
+                            // Watch the directories no longer ignored; the files in them are not journaled,
+                            // so the next refresh scans the working directory in full
+                            RepoHelper.reloadIgnoreMatcher();
+                            register(watcher, keys, Paths.get("."), "", null);
+                            lines.append(OVERFLOW_LINE).append('\n');
+                            continue;
+                        }
+                        if (!path.startsWith(COOKIE_PREFIX)
+                                && RepoHelper.ignoreMatcher().match(path) == IgnoreMatcher.IGNORED) {
+                            continue;
+                        }
+                        lines.append(path).append('\n');
+                        Path entry = Paths.get(path);
+                        if (event.kind() == ENTRY_CREATE && Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                            register(watcher, keys, entry, path + "/", lines);
+                        }
+                    }
+                    if (!key.reset()) {
+                        keys.remove(key);
+                    }
+                    journal.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+                    journal.flush();
+                }
+            }
+        } catch (IOException e) {
+            throw error(e.getMessage());
+        } catch (InterruptedException e) {
+            return;
+        }
+    }
+
+    /** Watch DIR, whose relative path is PREFIX, and the directories beneath it that are not ignored.
+     *  The files found are appended to LINES unless it is null, since they may have been created
+     *  before the directory was watched. */
+    private static void register(WatchService watcher, Map<WatchKey, String> keys, Path dir, String prefix,
+                                 StringBuilder lines) throws IOException {
+        keys.put(dir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), prefix);
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path entry: entries) {
+                String path = prefix + entry.getFileName();
+                int match = RepoHelper.ignoreMatcher().match(path);
+                if (match == IgnoreMatcher.IGNORED) {
+                    continue;
+                }
+                if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                    if (match == IgnoreMatcher.NOT_IGNORED) {
+                        register(watcher, keys, entry, path + "/", lines);
+                    }
+                } else if (lines != null) {
+                    lines.append(path).append('\n');
+                }
+            }
+        }
+    }
+}
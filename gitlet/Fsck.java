@@ -0,0 +1,230 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import static gitlet.Utils.*;
+
+/** Checks the integrity of the repository.
+ *
+ *  Every object the repository stores itself, loose or packed, is hashed again and compared with its name.
+ *  The objects are streamed into the digest with copyTo, so a worker never holds a whole object,
+ *  and they are handed to the worker pool BATCH_SIZE at a time, so memory stays bounded however many
+ *  objects there are. Then the history is walked from the branches, HEAD and the staging area: every
+ *  commit must be readable, and its parents and the blobs of its snapshot must exist (in the repository
+ *  or in one of its alternates, whose own objects are not rehashed).
+ */
+class Fsck {
+
+    /** Number of objects handed to the worker pool at once. */
+    static final int BATCH_SIZE = 4096;
+
+    /** The problems found, one line each. */
+    private final List<String> problems = new ArrayList<>();
+
+    private final ObjectStore objects = RepoHelper.objectStore();
+
+    private long objectCount;
+    private long byteCount;
+
+    /** Run every check and print the problems found, with the throughput of the rehashing. */
+    void run() {
+        long start = System.nanoTime();
+        verifyLooseObjects(RepoHelper.looseObjects());
+        try {
+            for (PackFile pack: RepoHelper.packedObjects().packs()) {
+                verifyPack(pack);
+            }
+        } catch (IllegalArgumentException e) {
+            problems.add("unreadable pack: " + e.getMessage());
+        }
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+        System.out.printf("Checked %d objects (%.1f MB) in %.0f ms: %.1f MB/s, %.0f objects/s.%n",
+                objectCount, byteCount / 1e6, seconds * 1e3, byteCount / 1e6 / seconds, objectCount / seconds);
+
+        List<ObjectId> roots = verifyRefs();
+        verifyHistory(roots);
+
+        for (String problem: problems) {
+            System.out.println(problem);
+        }
+        if (problems.isEmpty()) {
+            System.out.println("No problems found.");
+        } else {
+            System.out.println("Found " + problems.size() + " problems.");
+        }
+    }
+
+    /** Rehash the loose objects of LOOSE. */
+    private void verifyLooseObjects(LooseObjectStore loose) {
+        List<ObjectId> ids = new ArrayList<>();
+        String[] dirNames = loose.getDir().list();
+        if (dirNames == null) {
+            return;
+        }
+        for (String dirName: dirNames) {
+            File dir = join(loose.getDir(), dirName);
+            if (dirName.length() != 2 || !dir.isDirectory()) {
+                continue;
+            }
+            for (String fileName: plainFilenamesIn(dir)) {
+                if (ObjectId.isHex(dirName + fileName)) {
+                    ids.add(ObjectId.fromHex(dirName + fileName));
+                } else {
+                    problems.add("stray file: " + join(dir, fileName).getPath());
+                }
+            }
+        }
+        verifyObjects(ids, loose::copyTo, "loose object");
+    }
+
+    /** Rehash the objects of PACK. */
+    private void verifyPack(PackFile pack) {
+        List<ObjectId> ids = new ArrayList<>(pack.size());
+        for (int i = 0; i < pack.size(); ++i) {
+            ids.add(pack.idAt(i));
+        }
+        verifyObjects(ids, pack::copyTo, "object in " + pack.getFile().getName());
+    }
+
+    /** Rehash the objects IDS, whose contents COPIER writes to a channel, on the worker pool,
+     *  BATCH_SIZE at a time. WHAT tells where they are stored. */
+    private void verifyObjects(List<ObjectId> ids, BiConsumer<ObjectId, WritableByteChannel> copier, String what) {
+        for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+            List<ObjectId> batch = ids.subList(from, Math.min(from + BATCH_SIZE, ids.size()));
+            List<Object> results = RepoHelper.parallelMap(batch, id -> {
+                HashingChannel channel = new HashingChannel();
+                try {
+                    copier.accept(id, channel);
+                } catch (IllegalArgumentException | GitletException e) {
+                    // Leave the hasher of the worker clean for the next object
+                    channel.hasher.finish();
+                    return "unreadable " + what + " " + id + ": " + e.getMessage();
+                }
+                ObjectId actual = channel.hasher.finish();
+                if (!actual.equals(id)) {
+                    return "hash mismatch: " + what + " " + id + " hashes to " + actual;
+                }
+                return channel.bytes;
+            });
+            for (Object result: results) {
+                objectCount += 1;
+                if (result instanceof Long) {
+                    byteCount += (Long) result;
+                } else {
+                    problems.add((String) result);
+                }
+            }
+        }
+    }
+
+    /** Check HEAD, the branches and the staging area, and return the objects they point to. */
+    private List<ObjectId> verifyRefs() {
+        List<ObjectId> roots = new ArrayList<>();
+        Refs refs = RepoHelper.refs();
+        try {
+            for (String branchName: refs.names()) {
+                try {
+                    ObjectId tip = refs.read(branchName);
+                    if (objects.has(tip)) {
+                        roots.add(tip);
+                    } else {
+                        problems.add("broken branch " + branchName + ": missing commit " + tip);
+                    }
+                } catch (IllegalArgumentException e) {
+                    problems.add("broken branch " + branchName + ": " + e.getMessage());
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            problems.add("broken packed-refs: " + e.getMessage());
+        }
+
+        String head = readContentsAsString(join(".gitlet", "HEAD")).replace(File.separatorChar, '/');
+        String branches = ".gitlet/branches/";
+        if (!head.startsWith(branches) || !refs.exists(head.substring(branches.length()))) {
+            problems.add("broken HEAD: no branch " + head);
+        }
+
+        try {
+            Staging index = Staging.load();
+            for (Map.Entry<String, ObjectId> entry: index.additionIndex.entrySet()) {
+                if (!objects.has(entry.getValue())) {
+                    problems.add("broken index: missing blob " + entry.getValue() + " for " + entry.getKey());
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            problems.add("broken index: " + e.getMessage());
+        }
+        return roots;
+    }
+
+    /** Check that every commit reachable from ROOTS can be read, and that its parents and blobs exist. */
+    private void verifyHistory(List<ObjectId> roots) {
+        Set<ObjectId> visited = new HashSet<>();
+        Set<ObjectId> blobs = new HashSet<>();
+        Deque<ObjectId> stack = new ArrayDeque<>(roots);
+        while (!stack.isEmpty()) {
+            ObjectId commitHash = stack.pop();
+            if (!visited.add(commitHash)) {
+                continue;
+            }
+            Commit commit;
+            try {
+                commit = objects.readObject(commitHash, Commit.class);
+            } catch (IllegalArgumentException e) {
+                problems.add("broken commit " + commitHash + ": " + e.getMessage());
+                continue;
+            }
+            for (ObjectId parent: new ObjectId[] {commit.getParent(), commit.getSecondParent()}) {
+                if (parent == null) {
+                    continue;
+                }
+                if (objects.has(parent)) {
+                    stack.push(parent);
+                } else {
+                    problems.add("broken commit " + commitHash + ": missing parent " + parent);
+                }
+            }
+            Snapshot.Cursor cursor = commit.getSnapshot().cursor();
+            while (cursor.next()) {
+                if (blobs.add(cursor.id()) && !objects.has(cursor.id())) {
+                    problems.add("broken commit " + commitHash + ": missing blob " + cursor.id()
+                            + " for " + cursor.path());
+                }
+            }
+        }
+    }
+
+    /** A channel feeding what is written to it into the hasher of the worker, under the hash function
+     *  of the repository. */
+    private static class HashingChannel implements WritableByteChannel {
+        private final HashAlgorithm.Hasher hasher = RepoHelper.hashAlgorithm().hasher();
+        private long bytes;
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            hasher.update(src);
+            bytes += n;
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package gitlet;
+
+import java.io.File;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static gitlet.Utils.*;
+
+/** The hash function naming the objects of a repository, chosen at init and recorded in .gitlet/hash
+ *  (a repository without that file uses SHA-1).
+ *
+ *  IDs are ObjectId.RAW_LENGTH bytes whatever the function: SHA-256 digests are truncated to their first
+ *  160 bits, which keeps the collision resistance of a 160-bit hash. FAST is a non-cryptographic hash built on
+ *  the round function of xxHash64, several times faster than SHA-1, for trusted repositories only: its
+ *  collisions can be forged. Each thread reuses its own Hasher for each function, so hashing allocates no digest.
+ */
+enum HashAlgorithm {
+
+    SHA1("sha1") {
+        @Override
+        Hasher newHasher() {
+            return new DigestHasher("SHA-1");
+        }
+    },
+    SHA256("sha256") {
+        @Override
+        Hasher newHasher() {
+            return new DigestHasher("SHA-256");
+        }
+    },
+    FAST("fast") {
+        @Override
+        Hasher newHasher() {
+            return new FastHasher();
+        }
+    };
+
+    /** The hash of repositories that do not name one. */
+    static final HashAlgorithm DEFAULT = SHA1;
+
+    /** Computes an ID incrementally. finish() returns the ID of the bytes given so far and starts over. */
+    interface Hasher {
+        void update(byte[] bytes, int offset, int length);
+
+        /** Hash the remaining bytes of BUFFER, consuming them. */
+        void update(ByteBuffer buffer);
+
+        ObjectId finish();
+    }
+
+    private final String name;
+    private final ThreadLocal<Hasher> hashers = ThreadLocal.withInitial(this::newHasher);
+
+    HashAlgorithm(String name) {
+        this.name = name;
+    }
+
+    /** The name of this function in .gitlet/hash and on the command line. */
+    String getName() {
+        return name;
+    }
+
+    /** Return a new hasher. */
+    abstract Hasher newHasher();
+
+    /** Return the hasher of the current thread, which must be finished before it is used again. */
+    Hasher hasher() {
+        return hashers.get();
+    }
+
+    /** Return the ID of CONTENTS. */
+    ObjectId hash(byte[] contents) {
+        Hasher hasher = hasher();
+        hasher.update(contents, 0, contents.length);
+        return hasher.finish();
+    }
+
+    /** Return the ID of the concatenation of VALS, which may be any mixture of byte arrays and Strings. */
+    ObjectId hash(Object... vals) {
+        Hasher hasher = hasher();
+        for (Object val: vals) {
+            byte[] bytes;
+            if (val instanceof byte[]) {
+                bytes = (byte[]) val;
+            } else if (val instanceof String) {
+                bytes = ((String) val).getBytes(StandardCharsets.UTF_8);
+            } else {
+                hasher.finish();
+                throw new IllegalArgumentException("improper type to hash");
+            }
+            hasher.update(bytes, 0, bytes.length);
+        }
+        return hasher.finish();
+    }
+
+    /** Return the function named NAME, or null if there is none. */
+    static HashAlgorithm forName(String name) {
+        for (HashAlgorithm algorithm: values()) {
+            if (algorithm.name.equals(name)) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+
+    /** Return the function of the repository whose .gitlet directory is GITLETDIR.
+     *  Throws IllegalArgumentException if it names an unknown one. */
+    static HashAlgorithm of(File gitletDir) {
+        File file = join(gitletDir, "hash");
+        if (!file.isFile()) {
+            return DEFAULT;
+        }
+        String name = readContentsAsString(file).strip();
+        HashAlgorithm algorithm = forName(name);
+        if (algorithm == null) {
+            throw new IllegalArgumentException("unknown hash algorithm " + name);
+        }
+        return algorithm;
+    }
+
+    /** Record this function as the one of the repository whose .gitlet directory is GITLETDIR. */
+    void save(File gitletDir) {
+        writeContents(join(gitletDir, "hash"), name + "\n");
+    }
+
+    /** A MessageDigest, whose digest is truncated to an ID. */
+    private static final class DigestHasher implements Hasher {
+        private final MessageDigest digest;
+
+        DigestHasher(String algorithm) {
+            try {
+                digest = MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException("System does not support " + algorithm);
+            }
+        }
+
+        @Override
+        public void update(byte[] bytes, int offset, int length) {
+            digest.update(bytes, offset, length);
+        }
+
+        @Override
+        public void update(ByteBuffer buffer) {
+            digest.update(buffer);
+        }
+
+        @Override
+        public ObjectId finish() {
+            return ObjectId.fromRaw(digest.digest());
+        }
+    }
+
+    /** xxHash64 over 32-byte stripes in four lanes, finished twice with different seeds, so that the tail and
+     *  length of the input reach two independent 64-bit states, which fill the 160 bits of an ID. */
+    private static final class FastHasher implements Hasher {
+        private static final long P1 = 0x9E3779B185EBCA87L;
+        private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+        private static final long P3 = 0x165667B19E3779F9L;
+        private static final long P4 = 0x85EBCA77C2B2AE63L;
+        private static final long P5 = 0x27D4EB2F165667C5L;
+        private static final long SEED_B = 0x5851F42D4C957F2DL;
+        private static final int STRIPE = 32;
+        private static final VarHandle LONGS =
+                MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+        private long v1;
+        private long v2;
+        private long v3;
+        private long v4;
+        private long total;
+        private final byte[] buffer = new byte[STRIPE];
+        private int buffered;
+        /** Copy of the bytes of a buffer without an array. */
+        private final byte[] chunk = new byte[8192];
+
+        FastHasher() {
+            reset();
+        }
+
+        private void reset() {
+            v1 = P1 + P2;
+            v2 = P2;
+            v3 = 0;
+            v4 = -P1;
+            total = 0;
+            buffered = 0;
+        }
+
+        @Override
+        public void update(byte[] bytes, int offset, int length) {
+            total += length;
+            if (buffered > 0) {
+                int n = Math.min(length, STRIPE - buffered);
+                System.arraycopy(bytes, offset, buffer, buffered, n);
+                buffered += n;
+                offset += n;
+                length -= n;
+                if (buffered < STRIPE) {
+                    return;
+                }
+                stripe(buffer, 0);
+                buffered = 0;
+            }
+            while (length >= STRIPE) {
+                stripe(bytes, offset);
+                offset += STRIPE;
+                length -= STRIPE;
+            }
+            System.arraycopy(bytes, offset, buffer, 0, length);
+            buffered = length;
+        }
+
+        @Override
+        public void update(ByteBuffer src) {
+            if (src.hasArray()) {
+                update(src.array(), src.arrayOffset() + src.position(), src.remaining());
+                src.position(src.limit());
+                return;
+            }
+            while (src.hasRemaining()) {
+                int n = Math.min(chunk.length, src.remaining());
+                src.get(chunk, 0, n);
+                update(chunk, 0, n);
+            }
+        }
+
+        @Override
+        public ObjectId finish() {
+            long a;
+            long b;
+            if (total >= STRIPE) {
+                a = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+                b = Long.rotateLeft(v4, 1) + Long.rotateLeft(v3, 7) + Long.rotateLeft(v2, 12) + Long.rotateLeft(v1, 18);
+                a = mergeLane(mergeLane(mergeLane(mergeLane(a, v1), v2), v3), v4);
+                b = mergeLane(mergeLane(mergeLane(mergeLane(b ^ SEED_B, v4), v3), v2), v1);
+            } else {
+                a = P5;
+                b = SEED_B + P5;
+            }
+            a += total;
+            b += total;
+            int i = 0;
+            for (; i + 8 <= buffered; i += 8) {
+                long k = round(0, (long) LONGS.get(buffer, i));
+                a = Long.rotateLeft(a ^ k, 27) * P1 + P4;
+                b = Long.rotateLeft(b ^ k, 27) * P1 + P4;
+            }
+            for (; i < buffered; ++i) {
+                long k = (buffer[i] & 0xff) * P5;
+                a = Long.rotateLeft(a ^ k, 11) * P1;
+                b = Long.rotateLeft(b ^ k, 11) * P1;
+            }
+            a = avalanche(a);
+            b = avalanche(b);
+            long c = avalanche(a ^ Long.rotateLeft(b, 29) * P3);
+            reset();
+            return ObjectId.fromWords(a, b, (int) (c >>> 32));
+        }
+
+        private void stripe(byte[] bytes, int offset) {
+            v1 = round(v1, (long) LONGS.get(bytes, offset));
+            v2 = round(v2, (long) LONGS.get(bytes, offset + 8));
+            v3 = round(v3, (long) LONGS.get(bytes, offset + 16));
+            v4 = round(v4, (long) LONGS.get(bytes, offset + 24));
+        }
+
+        private static long round(long acc, long input) {
+            return Long.rotateLeft(acc + input * P2, 31) * P1;
+        }
+
+        private static long mergeLane(long acc, long lane) {
+            return (acc ^ round(0, lane)) * P1 + P4;
+        }
+
+        private static long avalanche(long h) {
+            h ^= h >>> 33;
+            h *= P2;
+            h ^= h >>> 29;
+            h *= P3;
+            return h ^ (h >>> 32);
+        }
+    }
+}
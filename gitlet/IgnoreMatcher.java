@@ -0,0 +1,168 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** The compiled patterns of a .gitletignore file.
+ *
+ *  Each non-empty line of the file not starting with '#' is a glob pattern, with the usual meaning:
+ *  a pattern ending with '/' only matches directories, a pattern without any other '/' matches
+ *  the name of a file or directory at any depth, and any other pattern matches the path relative to
+ *  the working directory (a leading '/' is ignored). Everything beneath an ignored directory is ignored.
+ *  Patterns without wildcards are stored in a trie of path segments (or a set of names) so that they
+ *  cost one lookup whatever their number; the others are compiled into PathMatchers once.
+ *  Without a .gitletignore file, the functional files of the project are ignored, as gitlet always did.
+ *  The .gitlet directory and the cookie files of FsMonitor are always ignored.
+ */
+class IgnoreMatcher {
+
+    /** Results of match(). */
+    static final int NOT_IGNORED = 0;
+    static final int IGNORED_IF_DIRECTORY = 1;
+    static final int IGNORED = 2;
+
+    /** The name of the ignore file, in the working directory. */
+    static final String IGNORE_FILE = ".gitletignore";
+
+    /** The patterns used when there is no ignore file. */
+    private static final List<String> DEFAULT_PATTERNS =
+            Arrays.asList("Makefile", ".gitignore", "README.md", "pom.xml", ".DS_Store");
+
+    /** A node of the trie of literal anchored patterns. */
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private int mark = NOT_IGNORED;
+    }
+
+    /** A pattern with wildcards. */
+    private static class Glob {
+        private final PathMatcher matcher;
+        private final boolean anchored;
+        private final int mark;
+
+        Glob(PathMatcher matcher, boolean anchored, int mark) {
+            this.matcher = matcher;
+            this.anchored = anchored;
+            this.mark = mark;
+        }
+    }
+
+    /** Literal anchored patterns, by path segment. */
+    private final Node root = new Node();
+
+    /** Literal unanchored patterns, matching the last segment of a path. */
+    private final Map<String, Integer> names = new HashMap<>();
+
+    private final List<Glob> globs = new ArrayList<>();
+
+    /** Compile PATTERNS, given as the lines of an ignore file. */
+    IgnoreMatcher(List<String> patterns) {
+        names.put(".gitlet", IGNORED);
+        for (String line: patterns) {
+            String pattern = line.strip();
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                continue;
+            }
+            int mark = IGNORED;
+            if (pattern.endsWith("/")) {
+                mark = IGNORED_IF_DIRECTORY;
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            boolean anchored = pattern.contains("/");
+            if (pattern.startsWith("/")) {
+                pattern = pattern.substring(1);
+            }
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            if (isLiteral(pattern)) {
+                if (anchored) {
+                    Node node = root;
+                    for (String segment: pattern.split("/")) {
+                        node = node.children.computeIfAbsent(segment, s -> new Node());
+                    }
+                    node.mark = Math.max(node.mark, mark);
+                } else {
+                    names.merge(pattern, mark, Math::max);
+                }
+            } else {
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+                globs.add(new Glob(matcher, anchored, mark));
+            }
+        }
+    }
+
+    /** Compile the ignore file of the working directory DIR, or the default patterns if it has none. */
+    static IgnoreMatcher load(File dir) {
+        File ignoreFile = new File(dir, IGNORE_FILE);
+        if (!ignoreFile.isFile()) {
+            return new IgnoreMatcher(DEFAULT_PATTERNS);
+        }
+        return new IgnoreMatcher(Arrays.asList(Utils.readContentsAsString(ignoreFile).split("\n")));
+    }
+
+    /** Match the last segment of the relative path PATH, assuming its parent directories are not ignored.
+     *  This is what directory walks use, since they never enter an ignored directory.
+     *  Return NOT_IGNORED, IGNORED, or IGNORED_IF_DIRECTORY when PATH is only ignored if it is a directory,
+     *  so that callers only need to stat PATH in that case. */
+    int match(String path) {
+        int slash = path.lastIndexOf('/');
+        String name = path.substring(slash + 1);
+        int result = names.getOrDefault(name, NOT_IGNORED);
+        if (result == IGNORED || name.startsWith(FsMonitor.COOKIE_PREFIX)) {
+            return IGNORED;
+        }
+
+        Node node = root;
+        for (String segment: path.split("/")) {
+            node = node.children.get(segment);
+            if (node == null) {
+                break;
+            }
+        }
+        if (node != null) {
+            result = Math.max(result, node.mark);
+        }
+
+        if (!globs.isEmpty()) {
+            Path fullPath = Paths.get(path);
+            Path namePath = fullPath.getFileName();
+            for (Glob glob: globs) {
+                if (glob.mark > result && glob.matcher.matches(glob.anchored ? fullPath : namePath)) {
+                    result = glob.mark;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Whether the plain file at relative path PATH is ignored, either itself or through one
+     *  of its parent directories. */
+    boolean isIgnored(String path) {
+        int slash = path.indexOf('/');
+        while (slash >= 0) {
+            if (match(path.substring(0, slash)) != NOT_IGNORED) {
+                return true;
+            }
+            slash = path.indexOf('/', slash + 1);
+        }
+        return match(path) == IGNORED;
+    }
+
+    private static boolean isLiteral(String pattern) {
+        for (char c: "*?[]{}\\".toCharArray()) {
+            if (pattern.indexOf(c) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,117 @@
+package gitlet;
+
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** A stack of layers seen as one store, such as memory over loose objects over packs: a store on top,
+ *  over read-only sources. Reads go to the first layer that has the object; writes go to the top store,
+ *  and are skipped for the objects some layer already has. */
+class LayeredObjectStore implements ObjectStore {
+
+    private final ObjectStore top;
+    private final List<ObjectSource> layers;
+
+    /** The store made of TOP, which is written to, over the sources BELOW, top first. */
+    LayeredObjectStore(ObjectStore top, List<? extends ObjectSource> below) {
+        this.top = top;
+        this.layers = new ArrayList<>();
+        layers.add(top);
+        layers.addAll(below);
+    }
+
+    /** Return the layers, top first. */
+    List<ObjectSource> getLayers() {
+        return layers;
+    }
+
+    /** Return the first layer that has object ID, or null if none has it. */
+    ObjectSource layerOf(ObjectId id) {
+        for (ObjectSource layer: layers) {
+            if (layer.has(id)) {
+                return layer;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean has(ObjectId id) {
+        return layerOf(id) != null;
+    }
+
+    @Override
+    public InputStream open(ObjectId id) {
+        return layerContaining(id).open(id);
+    }
+
+    @Override
+    public byte[] read(ObjectId id) {
+        return layerContaining(id).read(id);
+    }
+
+    @Override
+    public long length(ObjectId id) {
+        return layerContaining(id).length(id);
+    }
+
+    @Override
+    public <T extends Serializable> T readObject(ObjectId id, Class<T> expectedClass) {
+        return layerContaining(id).readObject(id, expectedClass);
+    }
+
+    @Override
+    public void copyTo(ObjectId id, WritableByteChannel out) {
+        layerContaining(id).copyTo(id, out);
+    }
+
+    @Override
+    public void put(ObjectId id, byte[] contents) {
+        if (!has(id)) {
+            top.put(id, contents);
+        }
+    }
+
+    @Override
+    public void putAll(Map<ObjectId, byte[]> objects) {
+        Map<ObjectId, byte[]> missing = new HashMap<>();
+        for (Map.Entry<ObjectId, byte[]> object: objects.entrySet()) {
+            if (!has(object.getKey())) {
+                missing.put(object.getKey(), object.getValue());
+            }
+        }
+        if (!missing.isEmpty()) {
+            top.putAll(missing);
+        }
+    }
+
+    @Override
+    public List<ObjectId> findPrefix(String prefix) {
+        Set<ObjectId> found = new LinkedHashSet<>();
+        for (ObjectSource layer: layers) {
+            found.addAll(layer.findPrefix(prefix));
+        }
+        return new ArrayList<>(found);
+    }
+
+    @Override
+    public void close() {
+        for (ObjectSource layer: layers) {
+            layer.close();
+        }
+    }
+
+    private ObjectSource layerContaining(ObjectId id) {
+        ObjectSource layer = layerOf(id);
+        if (layer == null) {
+            throw new IllegalArgumentException("Unable to load object " + id);
+        }
+        return layer;
+    }
+}
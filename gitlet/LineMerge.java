@@ -0,0 +1,152 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** A three-way merge of the lines of a file, as done by diff3.
+ *
+ *  The changes of both sides against the base version are computed with Diff, then walked together
+ *  from the start of the base to its end. Changes of one side that no change of the other side overlaps
+ *  or touches are taken as they are; overlapping changes form a chunk, which is resolved if both sides
+ *  made the same change, and is a conflict otherwise. The lines that both sides of a conflict share
+ *  at its start and end are moved out of it, so conflicts are as small as possible.
+ *  The merged file is written line range by line range into a single buffer.
+ */
+class LineMerge {
+
+    static final byte[] OURS_MARKER = "<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8);
+    static final byte[] SEPARATOR = "=======\n".getBytes(StandardCharsets.UTF_8);
+    static final byte[] THEIRS_MARKER = ">>>>>>>\n".getBytes(StandardCharsets.UTF_8);
+
+    /** The merged contents, and whether they hold conflicts. */
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private boolean conflict;
+
+    private final Diff.Lines base;
+    private final Diff.Lines ours;
+    private final Diff.Lines theirs;
+    private final int[] baseIds;
+    private final int[] ourIds;
+    private final int[] theirIds;
+
+    /** Merge the changes from BASE to OURS and from BASE to THEIRS. A null content stands for a missing file.
+     *  Binary files have no lines, so they conflict as a whole. */
+    LineMerge(byte[] base, byte[] ours, byte[] theirs) {
+        this.base = new Diff.Lines(base == null ? new byte[0] : base);
+        this.ours = new Diff.Lines(ours == null ? new byte[0] : ours);
+        this.theirs = new Diff.Lines(theirs == null ? new byte[0] : theirs);
+        Map<Diff.Line, Integer> ids = new HashMap<>();
+        baseIds = this.base.intern(ids);
+        ourIds = this.ours.intern(ids);
+        theirIds = this.theirs.intern(ids);
+        if (Diff.isBinary(base) || Diff.isBinary(ours) || Diff.isBinary(theirs)) {
+            conflict = true;
+            out.writeBytes(OURS_MARKER);
+            this.ours.write(out, 0, this.ours.count(), true);
+            out.writeBytes(SEPARATOR);
+            this.theirs.write(out, 0, this.theirs.count(), true);
+            out.writeBytes(THEIRS_MARKER);
+        } else {
+            merge();
+        }
+    }
+
+    /** Return the merged contents. */
+    byte[] getContents() {
+        return out.toByteArray();
+    }
+
+    /** Whether the merged contents hold conflict markers. */
+    boolean hasConflict() {
+        return conflict;
+    }
+
+    private void merge() {
+        List<int[]> ourEdits = Diff.edits(baseIds, ourIds, Diff.Algorithm.HISTOGRAM);
+        List<int[]> theirEdits = Diff.edits(baseIds, theirIds, Diff.Algorithm.HISTOGRAM);
+        int position = 0;
+        int i = 0;
+        int j = 0;
+        while (i < ourEdits.size() || j < theirEdits.size()) {
+            // Start a chunk with the first change of either side, then take in every change of both sides
+            // that starts within (or right at the end of) the base lines covered so far
+            boolean oursFirst = j == theirEdits.size()
+                    || (i < ourEdits.size() && ourEdits.get(i)[0] <= theirEdits.get(j)[0]);
+            int[] first = oursFirst ? ourEdits.get(i) : theirEdits.get(j);
+            int chunkStart = first[0];
+            int chunkEnd = first[1];
+            int iEnd = i;
+            int jEnd = j;
+            boolean grown = true;
+            while (grown) {
+                grown = false;
+                while (iEnd < ourEdits.size() && ourEdits.get(iEnd)[0] <= chunkEnd) {
+                    chunkEnd = Math.max(chunkEnd, ourEdits.get(iEnd)[1]);
+                    iEnd += 1;
+                    grown = true;
+                }
+                while (jEnd < theirEdits.size() && theirEdits.get(jEnd)[0] <= chunkEnd) {
+                    chunkEnd = Math.max(chunkEnd, theirEdits.get(jEnd)[1]);
+                    jEnd += 1;
+                    grown = true;
+                }
+            }
+
+            base.write(out, position, chunkStart, false);
+            if (iEnd == i) {
+                int[] range = sideRange(theirEdits, j, jEnd, chunkStart, chunkEnd);
+                theirs.write(out, range[0], range[1], false);
+            } else if (jEnd == j) {
+                int[] range = sideRange(ourEdits, i, iEnd, chunkStart, chunkEnd);
+                ours.write(out, range[0], range[1], false);
+            } else {
+                resolve(sideRange(ourEdits, i, iEnd, chunkStart, chunkEnd),
+                        sideRange(theirEdits, j, jEnd, chunkStart, chunkEnd));
+            }
+            position = chunkEnd;
+            i = iEnd;
+            j = jEnd;
+        }
+        base.write(out, position, base.count(), false);
+    }
+
+    /** Return the lines of a side that replace the base lines [CHUNKSTART, CHUNKEND),
+     *  given the edits [FROM, TO) of that side, which all lie in the chunk. */
+    private static int[] sideRange(List<int[]> edits, int from, int to, int chunkStart, int chunkEnd) {
+        int[] first = edits.get(from);
+        int[] last = edits.get(to - 1);
+        return new int[] {first[2] - (first[0] - chunkStart), last[3] + (chunkEnd - last[1])};
+    }
+
+    /** Write the chunk where our lines OURRANGE and their lines THEIRRANGE replace the same base lines. */
+    private void resolve(int[] ourRange, int[] theirRange) {
+        int ourStart = ourRange[0];
+        int ourEnd = ourRange[1];
+        int theirStart = theirRange[0];
+        int theirEnd = theirRange[1];
+        while (ourStart < ourEnd && theirStart < theirEnd && ourIds[ourStart] == theirIds[theirStart]) {
+            ourStart += 1;
+            theirStart += 1;
+        }
+        int ourTail = ourEnd;
+        int theirTail = theirEnd;
+        while (ourTail > ourStart && theirTail > theirStart && ourIds[ourTail - 1] == theirIds[theirTail - 1]) {
+            ourTail -= 1;
+            theirTail -= 1;
+        }
+
+        ours.write(out, ourRange[0], ourStart, false);
+        if (ourStart < ourTail || theirStart < theirTail) {
+            conflict = true;
+            out.writeBytes(OURS_MARKER);
+            ours.write(out, ourStart, ourTail, true);
+            out.writeBytes(SEPARATOR);
+            theirs.write(out, theirStart, theirTail, true);
+            out.writeBytes(THEIRS_MARKER);
+        }
+        ours.write(out, ourTail, ourEnd, false);
+    }
+}
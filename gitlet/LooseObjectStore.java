@@ -0,0 +1,134 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static gitlet.Utils.*;
+
+/** The loose objects of an object directory: each object is a file named after its hash,
+ *  in a subdirectory named after the first two hex digits, as in .gitlet/objects/xx/yyyy.
+ *  Objects are written to a temporary file of that subdirectory first, then renamed. */
+class LooseObjectStore implements ObjectStore {
+
+    private final File dir;
+
+    LooseObjectStore(File dir) {
+        this.dir = dir;
+    }
+
+    File getDir() {
+        return dir;
+    }
+
+    /** Return the file of object ID, whether it exists or not. */
+    File file(ObjectId id) {
+        String hex = id.toString();
+        return join(dir, hex.substring(0, 2), hex.substring(2));
+    }
+
+    @Override
+    public boolean has(ObjectId id) {
+        return file(id).isFile();
+    }
+
+    @Override
+    public InputStream open(ObjectId id) {
+        try {
+            return new FileInputStream(file(id));
+        } catch (FileNotFoundException e) {
+            throw new IllegalArgumentException("Unable to load object " + id);
+        }
+    }
+
+    @Override
+    public byte[] read(ObjectId id) {
+        File file = file(id);
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("Unable to load object " + id);
+        }
+        return readContents(file);
+    }
+
+    @Override
+    public long length(ObjectId id) {
+        File file = file(id);
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("Unable to load object " + id);
+        }
+        return file.length();
+    }
+
+    @Override
+    public void copyTo(ObjectId id, WritableByteChannel out) {
+        try (FileChannel in = FileChannel.open(file(id).toPath(), StandardOpenOption.READ)) {
+            long length = in.size();
+            long done = 0;
+            while (done < length) {
+                done += in.transferTo(done, length - done, out);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void put(ObjectId id, byte[] contents) {
+        File file = file(id);
+        if (file.isFile()) {
+            return;
+        }
+        // mkdirs() instead of mkdir() since another worker may be creating the same directory
+        file.getParentFile().mkdirs();
+        // Written aside, synced, then moved into place, so that a crash never leaves a truncated object
+        // under its name, which has() would report as present from then on
+        File temp = null;
+        try {
+            temp = File.createTempFile("tmp-", null, file.getParentFile());
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                out.write(contents);
+                out.getFD().sync();
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            if (temp != null) {
+                temp.delete();
+            }
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** The objects are independent files, so they are written by the worker pool. */
+    @Override
+    public void putAll(Map<ObjectId, byte[]> objects) {
+        RepoHelper.parallelMap(new ArrayList<>(objects.entrySet()), object -> {
+            put(object.getKey(), object.getValue());
+            return null;
+        });
+    }
+
+    @Override
+    public List<ObjectId> findPrefix(String prefix) {
+        List<ObjectId> found = new ArrayList<>();
+        List<String> names = plainFilenamesIn(join(dir, prefix.substring(0, 2)));
+        if (names != null) {
+            for (String name: names) {
+                if (name.startsWith(prefix.substring(2)) && name.length() == ObjectId.RAW_LENGTH * 2 - 2) {
+                    found.add(ObjectId.fromHex(prefix.substring(0, 2) + name));
+                }
+            }
+        }
+        return found;
+    }
+}
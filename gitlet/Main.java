@@ -1,6 +1,7 @@
 package gitlet;
 
 import java.io.File;
+import java.util.Arrays;
 import gitlet.Utils;
 
 /** Driver class for Gitlet, a subset of the Git version-control system.
@@ -24,12 +25,18 @@ public class Main {
         Repository repo = new Repository();
         switch(firstArg) {
             case "init":
-                Utils.operandCheck(1, argNum);
-                repo.init();
+                if (argNum == 2 && args[1].startsWith("--hash=")) {
+                    repo.init(args[1].substring("--hash=".length()));
+                } else {
+                    Utils.operandCheck(1, argNum);
+                    repo.init(null);
+                }
                 break;
             case "add":
-                Utils.operandCheck(2, argNum);
-                repo.add(args[1]);
+                if (argNum < 2) {
+                    Utils.raiseError("Incorrect operands.");
+                }
+                repo.add(Arrays.copyOfRange(args, 1, argNum));
                 break;
             case "commit":
                 if (args.length < 2) {
@@ -44,8 +51,37 @@ public class Main {
                 repo.rm(args[1]);
                 break;
             case "log":
+                if (argNum == 2) {
+                    repo.log(args[1]);
+                } else {
+                    Utils.operandCheck(1, argNum);
+                    repo.log();
+                }
+                break;
+            case "reflog":
+                if (argNum >= 2 && args[1].equals("expire")) {
+                    if (argNum > 3) {
+                        Utils.raiseError("Incorrect operands.");
+                    }
+                    long days = Reflog.RETENTION_DAYS;
+                    if (argNum == 3) {
+                        try {
+                            days = Long.parseLong(args[2]);
+                        } catch (NumberFormatException e) {
+                            Utils.raiseError("Incorrect operands.");
+                        }
+                    }
+                    repo.reflogExpire(days);
+                } else {
+                    if (argNum > 2) {
+                        Utils.raiseError("Incorrect operands.");
+                    }
+                    repo.reflog(argNum == 2 ? args[1] : null);
+                }
+                break;
+            case "commit-graph":
                 Utils.operandCheck(1, argNum);
-                repo.log();
+                repo.commitGraph();
                 break;
             case "global-log":
                 Utils.operandCheck(1, argNum);
@@ -94,6 +130,76 @@ public class Main {
                 Utils.operandCheck(2, argNum);
                 repo.merge(args[1]);
                 break;
+            case "archive":
+                Utils.operandCheck(3, argNum);
+                repo.archive(args[1], args[2]);
+                break;
+            case "fast-import":
+                if (argNum > 2) {
+                    Utils.raiseError("Incorrect operands.");
+                }
+                repo.fastImport(argNum == 2 ? args[1] : null);
+                break;
+            case "fast-export":
+                repo.fastExport(Arrays.copyOfRange(args, 1, argNum));
+                break;
+            case "cherry-pick":
+                Utils.operandCheck(2, argNum);
+                repo.cherryPick(args[1]);
+                break;
+            case "watch":
+                Utils.operandCheck(1, argNum);
+                repo.watch();
+                break;
+            case "gc":
+                Utils.operandCheck(1, argNum);
+                repo.gc();
+                break;
+            case "pack-refs":
+                Utils.operandCheck(1, argNum);
+                repo.packRefs();
+                break;
+            case "fsck":
+                Utils.operandCheck(1, argNum);
+                repo.fsck();
+                break;
+            case "diff":
+                repo.diff(Arrays.copyOfRange(args, 1, argNum));
+                break;
+            case "sparse-checkout":
+                if (argNum < 2) {
+                    Utils.raiseError("Incorrect operands.");
+                }
+                repo.sparseCheckout(args[1], Arrays.copyOfRange(args, 2, argNum));
+                break;
+            case "clone":
+                Utils.operandCheck(2, argNum);
+                repo.cloneRepo(args[1]);
+                break;
+            case "add-remote":
+                Utils.operandCheck(3, argNum);
+                repo.addRemote(args[1], args[2]);
+                break;
+            case "rm-remote":
+                Utils.operandCheck(2, argNum);
+                repo.rmRemote(args[1]);
+                break;
+            case "add-alternate":
+                Utils.operandCheck(2, argNum);
+                repo.addAlternate(args[1]);
+                break;
+            case "fetch":
+                Utils.operandCheck(3, argNum);
+                repo.fetch(args[1], args[2]);
+                break;
+            case "push":
+                Utils.operandCheck(3, argNum);
+                repo.push(args[1], args[2]);
+                break;
+            case "pull":
+                Utils.operandCheck(3, argNum);
+                repo.pull(args[1], args[2]);
+                break;
             default:
                 System.out.println("No command with that name exists.");
         }
@@ -0,0 +1,54 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Objects kept in memory only, for benchmarks and for operations whose objects may be thrown away.
+ *  The contents passed to put() are kept as they are, so callers must not change them afterwards. */
+class MemoryObjectStore implements ObjectStore {
+
+    private final ConcurrentHashMap<ObjectId, byte[]> objects = new ConcurrentHashMap<>();
+
+    /** Number of objects in the store. */
+    int size() {
+        return objects.size();
+    }
+
+    @Override
+    public boolean has(ObjectId id) {
+        return objects.containsKey(id);
+    }
+
+    @Override
+    public InputStream open(ObjectId id) {
+        return new ByteArrayInputStream(read(id));
+    }
+
+    @Override
+    public byte[] read(ObjectId id) {
+        byte[] contents = objects.get(id);
+        if (contents == null) {
+            throw new IllegalArgumentException("Unable to load object " + id);
+        }
+        return contents;
+    }
+
+    @Override
+    public void put(ObjectId id, byte[] contents) {
+        objects.putIfAbsent(id, contents);
+    }
+
+    @Override
+    public List<ObjectId> findPrefix(String prefix) {
+        List<ObjectId> found = new ArrayList<>();
+        for (ObjectId id: objects.keySet()) {
+            if (id.startsWith(prefix)) {
+                found.add(id);
+            }
+        }
+        return found;
+    }
+}
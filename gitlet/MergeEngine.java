@@ -0,0 +1,138 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static gitlet.RepoHelper.parallelMap;
+
+/** A three-way merge of snapshots, done in memory.
+ *
+ *  The merged snapshot is built from the base, ours and theirs snapshots alone: the files that only one
+ *  side changed take that side's version, and the files both sides changed differently are merged line by line
+ *  with LineMerge, on the worker pool, their merged contents being written straight to the object store.
+ *  Nothing is read from or written to the working directory or .gitlet, only to the object store and the sketch
+ *  cache given, so a merge can be computed in any repository, or in a MemoryObjectStore; it is up to the
+ *  caller to check the result out, if there is a working directory to update.
+ *  Files renamed on one side and still at their old path on the other are followed, see RenameDetector.
+ */
+class MergeEngine {
+
+    /** The outcome of a merge. */
+    static final class Result {
+        /** The merged files. */
+        final Snapshot snapshot;
+        /** The paths whose merged contents hold conflict markers, in path order. */
+        final List<String> conflicts;
+
+        Result(Snapshot snapshot, List<String> conflicts) {
+            this.snapshot = snapshot;
+            this.conflicts = conflicts;
+        }
+
+        boolean hasConflict() {
+            return !conflicts.isEmpty();
+        }
+    }
+
+    private final ObjectStore store;
+    private final HashAlgorithm algorithm;
+    private final SketchCache sketches;
+
+    /** A merge engine reading and writing blobs in STORE, whose IDs are computed with ALGORITHM, keeping the
+     *  sketches of rename detection in SKETCHES. */
+    MergeEngine(ObjectStore store, HashAlgorithm algorithm, SketchCache sketches) {
+        this.store = store;
+        this.algorithm = algorithm;
+        this.sketches = sketches;
+    }
+
+    /** A merge engine reading and writing blobs in STORE, whose IDs are computed with ALGORITHM, keeping the
+     *  sketches of rename detection in memory. */
+    MergeEngine(ObjectStore store, HashAlgorithm algorithm) {
+        this(store, algorithm, new SketchCache(null));
+    }
+
+    /** Merge the changes from BASE to OURS and from BASE to THEIRS. */
+    Result merge(Snapshot base, Snapshot ours, Snapshot theirs) {
+        // Join the snapshots as if a file renamed on one side had been renamed on the base and on the other
+        // side too, so that the changes made at its old path are merged into it
+        Snapshot.Builder baseView = base.edit();
+        Snapshot.Builder ourView = ours.edit();
+        Snapshot.Builder theirView = theirs.edit();
+        for (RenameDetector.Rename rename: findRenames(base, ours)) {
+            if (theirs.contains(rename.from) && !theirs.contains(rename.to)) {
+                baseView.remove(rename.from).put(rename.to, base.get(rename.from));
+                theirView.remove(rename.from).put(rename.to, theirs.get(rename.from));
+            }
+        }
+        for (RenameDetector.Rename rename: findRenames(base, theirs)) {
+            if (ours.contains(rename.from) && !ours.contains(rename.to)) {
+                baseView.remove(rename.from).put(rename.to, base.get(rename.from));
+                ourView.remove(rename.from).put(rename.to, ours.get(rename.from));
+            }
+        }
+
+        // Start from our side, renames of their side included, and apply their changes to it
+        Snapshot ourSide = ourView.build();
+        Snapshot.Builder merged = ourSide.edit();
+        List<Map.Entry<String, ObjectId[]>> bothChangedFiles = new ArrayList<>();
+        Snapshot.join((fileName, ids) -> {
+            ObjectId baseHash = ids[0];
+            ObjectId ourHash = ids[1];
+            ObjectId theirHash = ids[2];
+            boolean modifiedInOurs = !Objects.equals(ourHash, baseHash);
+            boolean modifiedInTheirs = !Objects.equals(theirHash, baseHash);
+            if (baseHash == null) {
+                // Files added on their side only, or added on both sides with different contents,
+                // which are merged against an empty base
+                if (ourHash == null) {
+                    merged.put(fileName, theirHash);
+                } else if (theirHash != null && !ourHash.equals(theirHash)) {
+                    bothChangedFiles.add(Map.entry(fileName, ids));
+                }
+            } else if (!modifiedInOurs && modifiedInTheirs) {
+                // Files changed on their side only, deletions included
+                if (theirHash != null) {
+                    merged.put(fileName, theirHash);
+                } else {
+                    merged.remove(fileName);
+                }
+            } else if (modifiedInOurs && modifiedInTheirs && !Objects.equals(ourHash, theirHash)) {
+                bothChangedFiles.add(Map.entry(fileName, ids));
+            }
+        }, baseView.build(), ourSide, theirView.build());
+
+        // Merge the lines of the files changed on both sides against the base version, on the worker pool.
+        // Changes to different lines are combined, and only the overlapping ones are left as conflicts.
+        List<Map.Entry<ObjectId, Boolean>> mergedFiles = parallelMap(bothChangedFiles, entry -> {
+            ObjectId[] ids = entry.getValue();
+            LineMerge lineMerge = new LineMerge(read(ids[0]), read(ids[1]), read(ids[2]));
+            byte[] mergedContent = lineMerge.getContents();
+            ObjectId mergedHash = algorithm.hash(mergedContent);
+            store.put(mergedHash, mergedContent);
+            return Map.entry(mergedHash, lineMerge.hasConflict());
+        });
+        List<String> conflicts = new ArrayList<>();
+        for (int i = 0; i < bothChangedFiles.size(); ++i) {
+            String fileName = bothChangedFiles.get(i).getKey();
+            merged.put(fileName, mergedFiles.get(i).getKey());
+            if (mergedFiles.get(i).getValue()) {
+                conflicts.add(fileName);
+            }
+        }
+        return new Result(merged.build(), conflicts);
+    }
+
+    /** Return the files renamed from BEFORE to AFTER. */
+    private List<RenameDetector.Rename> findRenames(Snapshot before, Snapshot after) {
+        RenameDetector.ContentReader reader = (fileName, blobHash) -> store.read(blobHash);
+        return new RenameDetector(before, after, reader, reader, sketches, false).detect();
+    }
+
+    /** Return the contents of blob ID, or null for a missing file. */
+    private byte[] read(ObjectId id) {
+        return id == null ? null : store.read(id);
+    }
+}
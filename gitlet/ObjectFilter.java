@@ -0,0 +1,45 @@
+package gitlet;
+
+/** A Bloom filter of object IDs: a set that may answer that it has an ID it was never given, about once
+ *  in a hundred times, but never that it lacks one it was given.
+ *
+ *  IDs are hashes already, so the probed bits are derived from two words of the ID by double hashing, without
+ *  hashing it again. The filter takes BITS_PER_OBJECT bits per expected object.
+ */
+class ObjectFilter {
+
+    /** Bits per object and probes per lookup, for a false positive rate of about 1%. */
+    static final int BITS_PER_OBJECT = 10;
+    static final int PROBES = 7;
+
+    private final long[] bits;
+    private final long bitCount;
+
+    /** An empty filter sized for EXPECTED objects. */
+    ObjectFilter(int expected) {
+        bits = new long[Math.max(1, (int) (((long) expected * BITS_PER_OBJECT + 63) / 64))];
+        bitCount = (long) bits.length * 64;
+    }
+
+    void add(ObjectId id) {
+        long h1 = id.firstWord();
+        long h2 = id.secondWord() | 1;
+        for (int i = 0; i < PROBES; ++i) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /** Whether ID may have been added. */
+    boolean mightContain(ObjectId id) {
+        long h1 = id.firstWord();
+        long h2 = id.secondWord() | 1;
+        for (int i = 0; i < PROBES; ++i) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
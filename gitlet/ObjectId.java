@@ -0,0 +1,213 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/** The 20-byte ID of a gitlet object (a commit or a blob), the hash of its contents (see HashAlgorithm).
+ *  The ID is kept in binary form as two longs and an int, so that it is
+ *  several times smaller than its 40-char hex string and cheap to hash and compare.
+ *  Hex strings only appear when IDs are read from or written to files and the terminal; they are
+ *  converted a byte at a time through lookup tables.
+ */
+public final class ObjectId implements Serializable, Comparable<ObjectId> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The length of an ID in bytes. */
+    public static final int RAW_LENGTH = 20;
+
+    /** The length of an ID as a hexadecimal numeral. */
+    public static final int HEX_LENGTH = 2 * RAW_LENGTH;
+
+    /** The two hex digits of each byte value, at twice the value. */
+    private static final char[] HEX_PAIRS = new char[512];
+
+    /** The value of each lowercase hex digit, -1 for the other characters. */
+    private static final byte[] DIGIT_VALUES = new byte[128];
+
+    static {
+        char[] digits = "0123456789abcdef".toCharArray();
+        for (int b = 0; b < 256; ++b) {
+            HEX_PAIRS[2 * b] = digits[b >>> 4];
+            HEX_PAIRS[2 * b + 1] = digits[b & 0xf];
+        }
+        Arrays.fill(DIGIT_VALUES, (byte) -1);
+        for (int d = 0; d < 16; ++d) {
+            DIGIT_VALUES[digits[d]] = (byte) d;
+        }
+    }
+
+    /** Bytes 0-7, 8-15 and 16-19 of the ID, big-endian. */
+    private final long w1;
+    private final long w2;
+    private final int w3;
+
+    private ObjectId(long w1, long w2, int w3) {
+        this.w1 = w1;
+        this.w2 = w2;
+        this.w3 = w3;
+    }
+
+    /** Return the ID stored in RAW_LENGTH bytes of RAW starting at OFFSET. */
+    public static ObjectId fromRaw(byte[] raw, int offset) {
+        return new ObjectId(readLong(raw, offset), readLong(raw, offset + 8), (int) readBits(raw, offset + 16, 4));
+    }
+
+    /** Return the ID whose bytes 0-7, 8-15 and 16-19 are W1, W2 and W3, big-endian. */
+    static ObjectId fromWords(long w1, long w2, int w3) {
+        return new ObjectId(w1, w2, w3);
+    }
+
+    /** Return the ID stored in the first RAW_LENGTH bytes of RAW. */
+    public static ObjectId fromRaw(byte[] raw) {
+        return fromRaw(raw, 0);
+    }
+
+    /** Return the ID denoted by the 40-digit hex string HEX.
+     *  Throws IllegalArgumentException if HEX is not a valid ID. */
+    public static ObjectId fromHex(String hex) {
+        if (!isHex(hex)) {
+            throw new IllegalArgumentException("not an object id: " + hex);
+        }
+        return new ObjectId(parseHex(hex, 0, 16), parseHex(hex, 16, 16), (int) parseHex(hex, 32, 8));
+    }
+
+    /** Whether S is a 40-digit lowercase hex string. */
+    public static boolean isHex(String s) {
+        return s.length() == HEX_LENGTH && isHexPrefix(s);
+    }
+
+    /** Whether S is the hex form of an ID or a prefix of it, of at least 2 digits. */
+    public static boolean isHexPrefix(String s) {
+        if (s.length() < 2 || s.length() > HEX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); ++i) {
+            char c = s.charAt(i);
+            if (c >= DIGIT_VALUES.length || DIGIT_VALUES[c] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Write the RAW_LENGTH bytes of this ID into DEST starting at OFFSET. */
+    public void copyRawTo(byte[] dest, int offset) {
+        writeBits(dest, offset, w1, 8);
+        writeBits(dest, offset + 8, w2, 8);
+        writeBits(dest, offset + 16, w3, 4);
+    }
+
+    /** Return the RAW_LENGTH bytes of this ID. */
+    public byte[] toRaw() {
+        byte[] raw = new byte[RAW_LENGTH];
+        copyRawTo(raw, 0);
+        return raw;
+    }
+
+    /** Return the first byte of this ID as an int between 0 and 255. */
+    public int firstByte() {
+        return (int) (w1 >>> 56);
+    }
+
+    /** Return the first 64 bits of this ID. Like hashCode(), they can serve as a hash of it. */
+    long firstWord() {
+        return w1;
+    }
+
+    /** Return the next 64 bits of this ID, independent of the first ones. */
+    long secondWord() {
+        return w2;
+    }
+
+    /** Return the first N hex digits of this ID. */
+    public String abbreviate(int n) {
+        return toString().substring(0, n);
+    }
+
+    /** Whether the hex form of this ID starts with PREFIX. */
+    public boolean startsWith(String prefix) {
+        return toString().startsWith(prefix);
+    }
+
+    /** Return the 40-digit hex form of this ID. */
+    @Override
+    public String toString() {
+        char[] hex = new char[HEX_LENGTH];
+        appendHex(hex, 0, w1, 8);
+        appendHex(hex, 16, w2, 8);
+        appendHex(hex, 32, w3, 4);
+        return new String(hex);
+    }
+
+    @Override
+    public int hashCode() {
+        // The bits of a SHA-1 are already uniformly distributed
+        return (int) (w1 >>> 32);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return w1 == other.w1 && w2 == other.w2 && w3 == other.w3;
+    }
+
+    /** IDs are ordered as unsigned byte strings, the same order as their hex forms. */
+    @Override
+    public int compareTo(ObjectId other) {
+        int cmp = Long.compareUnsigned(w1, other.w1);
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(w2, other.w2);
+        }
+        if (cmp == 0) {
+            cmp = Integer.compareUnsigned(w3, other.w3);
+        }
+        return cmp;
+    }
+
+    private static long readLong(byte[] raw, int offset) {
+        return readBits(raw, offset, 8);
+    }
+
+    /** Read N big-endian bytes of RAW starting at OFFSET. */
+    private static long readBits(byte[] raw, int offset, int n) {
+        long value = 0;
+        for (int i = 0; i < n; ++i) {
+            value = (value << 8) | (raw[offset + i] & 0xff);
+        }
+        return value;
+    }
+
+    /** Write the low N bytes of VALUE big-endian into DEST starting at OFFSET. */
+    private static void writeBits(byte[] dest, int offset, long value, int n) {
+        for (int i = n - 1; i >= 0; --i) {
+            dest[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    /** Write the low BYTES bytes of VALUE as hex digits into HEX starting at OFFSET. */
+    private static void appendHex(char[] hex, int offset, long value, int bytes) {
+        for (int i = bytes - 1; i >= 0; --i) {
+            int pair = 2 * (int) (value & 0xff);
+            hex[offset + 2 * i] = HEX_PAIRS[pair];
+            hex[offset + 2 * i + 1] = HEX_PAIRS[pair + 1];
+            value >>>= 8;
+        }
+    }
+
+    /** Return the value of the DIGITS hex digits of HEX starting at OFFSET, which must be valid. */
+    private static long parseHex(String hex, int offset, int digits) {
+        long value = 0;
+        for (int i = offset; i < offset + digits; ++i) {
+            value = (value << 4) | DIGIT_VALUES[hex.charAt(i)];
+        }
+        return value;
+    }
+}
@@ -0,0 +1,64 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+/** Objects that can be read but not written, such as the alternates of a repository, which belong to other
+ *  repositories. ObjectStore adds the writes; LayeredObjectStore reads from sources and writes to its top store.
+ */
+interface ObjectSource {
+
+    /** Whether the source has object ID. */
+    boolean has(ObjectId id);
+
+    /** Return a stream over the contents of object ID. Throws IllegalArgumentException if it doesn't exist. */
+    InputStream open(ObjectId id);
+
+    /** Return the IDs of the objects whose hex form starts with PREFIX (at least 2 digits). */
+    List<ObjectId> findPrefix(String prefix);
+
+    /** Return the contents of object ID. Throws IllegalArgumentException if it doesn't exist. */
+    default byte[] read(ObjectId id) {
+        try (InputStream in = open(id)) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Return the length of object ID, in bytes. Throws IllegalArgumentException if it doesn't exist. */
+    default long length(ObjectId id) {
+        return read(id).length;
+    }
+
+    /** Deserialize object ID, casting it to EXPECTEDCLASS. Throws IllegalArgumentException in case of problems. */
+    default <T extends Serializable> T readObject(ObjectId id, Class<T> expectedClass) {
+        try (ObjectInputStream in = new ObjectInputStream(open(id))) {
+            return expectedClass.cast(in.readObject());
+        } catch (IOException | ClassCastException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write the contents of object ID to OUT. Stores backed by files copy them without passing them
+     *  through the JVM. Throws IllegalArgumentException if it doesn't exist. */
+    default void copyTo(ObjectId id, WritableByteChannel out) {
+        ByteBuffer buffer = ByteBuffer.wrap(read(id));
+        try {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Release the files the store keeps open. The store opens them again when needed. */
+    default void close() {
+    }
+}
@@ -0,0 +1,40 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static gitlet.Utils.*;
+
+/** A store of immutable objects (blobs and serialized commits) addressed by the hash of their contents.
+ *
+ *  The repository reads and writes its objects through this interface only, so the way they are stored can
+ *  be swapped and measured: LooseObjectStore keeps one file per object, PackedObjectStore keeps them in packs,
+ *  MemoryObjectStore in a map, and LayeredObjectStore stacks a store over read-only sources, reading from the
+ *  first one that has an object and writing to the top one. Since an object never changes, a store never
+ *  overwrites one. The reads are declared by ObjectSource.
+ */
+interface ObjectStore extends ObjectSource {
+
+    /** Store CONTENTS as object ID, unless the store already has it. Safe to call from several threads at once. */
+    void put(ObjectId id, byte[] contents);
+
+    /** Store all of OBJECTS, mapping IDs to contents, at once. Stores may batch the writes. */
+    default void putAll(Map<ObjectId, byte[]> objects) {
+        for (Map.Entry<ObjectId, byte[]> object: objects.entrySet()) {
+            put(object.getKey(), object.getValue());
+        }
+    }
+
+    /** Return the store of the object directory OBJECTSDIR: its loose objects, then its packs, then the
+     *  alternates it lists, see AlternateObjectSource. Objects are written as loose objects of OBJECTSDIR. */
+    static LayeredObjectStore forDirectory(File objectsDir) {
+        List<ObjectSource> below = new ArrayList<>();
+        below.add(new PackedObjectStore(join(objectsDir, "pack")));
+        for (File dir: RepoHelper.readAlternates(objectsDir)) {
+            below.add(new AlternateObjectSource(dir));
+        }
+        return new LayeredObjectStore(new LooseObjectStore(objectsDir), below);
+    }
+}
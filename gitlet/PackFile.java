@@ -0,0 +1,273 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A read-only pack of gitlet objects under .gitlet/objects/pack.
+ *
+ *  A pack is a pair of files. pack-X.pack holds a header followed by the contents of the objects
+ *  back to back, exactly as they would be stored as loose objects. pack-X.idx holds a header,
+ *  a fanout table (entry i is the number of objects whose first ID byte is <= i), then the sorted
+ *  object IDs, their offsets in the pack and their lengths.
+ *  The index is mapped once as a whole; the pack is opened once and read through the
+ *  windows of WindowCache, so objects are decoded straight from the mapped memory.
+ */
+class PackFile {
+
+    static final byte[] PACK_MAGIC = "GPAK".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] IDX_MAGIC = "GIDX".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+
+    /** Size of the pack header: magic, version and object count. */
+    static final int PACK_HEADER_SIZE = 12;
+
+    /** Size of the idx header and fanout table. */
+    static final int IDX_HEADER_SIZE = 8 + 256 * 4;
+
+    private final File packFile;
+    private final FileChannel pack;
+    private final long packSize;
+    private final MappedByteBuffer idx;
+    private final int count;
+
+    /** Open the pack PACKFILE and its index, which lies next to it. */
+    PackFile(File packFile) {
+        this.packFile = packFile;
+        File idxFile = idxFileOf(packFile);
+        try (FileChannel idxChannel = FileChannel.open(idxFile.toPath(), StandardOpenOption.READ)) {
+            idx = idxChannel.map(FileChannel.MapMode.READ_ONLY, 0, idxChannel.size());
+            pack = FileChannel.open(packFile.toPath(), StandardOpenOption.READ);
+            packSize = pack.size();
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        if (!hasMagic(idx, IDX_MAGIC) || idx.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("corrupted pack index " + idxFile.getPath());
+        }
+        count = idx.getInt(IDX_HEADER_SIZE - 4);
+    }
+
+    /** Return the idx file of the pack PACKFILE. */
+    static File idxFileOf(File packFile) {
+        String name = packFile.getName();
+        return new File(packFile.getParentFile(), name.substring(0, name.length() - ".pack".length()) + ".idx");
+    }
+
+    File getFile() {
+        return packFile;
+    }
+
+    /** Number of objects in this pack. */
+    int size() {
+        return count;
+    }
+
+    /** Return the ID of the I-th object, in ID order. */
+    ObjectId idAt(int i) {
+        byte[] raw = new byte[ObjectId.RAW_LENGTH];
+        idx.get(idsOffset() + i * ObjectId.RAW_LENGTH, raw);
+        return ObjectId.fromRaw(raw);
+    }
+
+    boolean contains(ObjectId id) {
+        return find(id) >= 0;
+    }
+
+    /** Return the IDs in this pack whose hex form starts with PREFIX (at least 2 digits), none if it is not hex. */
+    List<ObjectId> findPrefix(String prefix) {
+        List<ObjectId> result = new ArrayList<>();
+        if (!ObjectId.isHexPrefix(prefix)) {
+            return result;
+        }
+        int firstByte = Integer.parseInt(prefix.substring(0, 2), 16);
+        for (int i = fanoutStart(firstByte); i < fanout(firstByte); ++i) {
+            ObjectId id = idAt(i);
+            if (id.startsWith(prefix)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /** Return the length of object ID, which must be in this pack. */
+    int length(ObjectId id) {
+        return lengthAt(indexOf(id));
+    }
+
+    /** Return the contents of object ID, which must be in this pack. */
+    byte[] read(ObjectId id) {
+        int i = indexOf(id);
+        byte[] contents = new byte[lengthAt(i)];
+        WindowCache.Window window = acquire(i);
+        try {
+            window.slice(offsetAt(i), contents.length).get(contents);
+        } finally {
+            window.release();
+        }
+        return contents;
+    }
+
+    /** Deserialize object ID, which must be in this pack, directly from the mapped pack. */
+    <T extends Serializable> T readObject(ObjectId id, Class<T> expectedClass) {
+        int i = indexOf(id);
+        WindowCache.Window window = acquire(i);
+        try (ObjectInputStream in = new ObjectInputStream(new BufferInputStream(window.slice(offsetAt(i), lengthAt(i))))) {
+            return expectedClass.cast(in.readObject());
+        } catch (IOException | ClassCastException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            window.release();
+        }
+    }
+
+    /** Write the contents of object ID, which must be in this pack, to OUT. */
+    void copyTo(ObjectId id, WritableByteChannel out) {
+        int i = indexOf(id);
+        checkBounds(i);
+        try {
+            // transferTo lets the kernel copy the bytes without passing them through the JVM
+            long position = offsetAt(i);
+            long remaining = lengthAt(i);
+            while (remaining > 0) {
+                long n = pack.transferTo(position, remaining, out);
+                position += n;
+                remaining -= n;
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Close the pack file and drop its cached windows. */
+    void close() {
+        WindowCache.forget(this);
+        try {
+            pack.close();
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    private WindowCache.Window acquire(int i) {
+        checkBounds(i);
+        return WindowCache.acquire(this, pack, packSize, offsetAt(i), lengthAt(i));
+    }
+
+    /** Fail if the I-th object does not lie within the pack, which is then truncated. */
+    private void checkBounds(int i) {
+        if (offsetAt(i) + lengthAt(i) > packSize) {
+            throw new IllegalArgumentException("truncated pack " + packFile.getName());
+        }
+    }
+
+    private int indexOf(ObjectId id) {
+        int i = find(id);
+        if (i < 0) {
+            throw new IllegalArgumentException("object " + id + " is not in " + packFile.getPath());
+        }
+        return i;
+    }
+
+    /** Binary-search the ID range of the fanout bucket of ID, returning its index or -1. */
+    private int find(ObjectId id) {
+        byte[] target = id.toRaw();
+        int lo = fanoutStart(id.firstByte());
+        int hi = fanout(id.firstByte()) - 1;
+        int base = idsOffset();
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareRaw(base + mid * ObjectId.RAW_LENGTH, target);
+            if (cmp == 0) {
+                return mid;
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Compare the raw ID stored at POSITION of the idx with TARGET. */
+    private int compareRaw(int position, byte[] target) {
+        for (int k = 0; k < target.length; ++k) {
+            int cmp = Integer.compare(idx.get(position + k) & 0xff, target[k] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    private int fanout(int b) {
+        return idx.getInt(8 + 4 * b);
+    }
+
+    private int fanoutStart(int b) {
+        return b == 0 ? 0 : fanout(b - 1);
+    }
+
+    private int idsOffset() {
+        return IDX_HEADER_SIZE;
+    }
+
+    private long offsetAt(int i) {
+        return idx.getLong(idsOffset() + count * ObjectId.RAW_LENGTH + i * 8);
+    }
+
+    private int lengthAt(int i) {
+        return idx.getInt(idsOffset() + count * (ObjectId.RAW_LENGTH + 8) + i * 4);
+    }
+
+    private static boolean hasMagic(ByteBuffer buffer, byte[] magic) {
+        for (int i = 0; i < magic.length; ++i) {
+            if (buffer.get(i) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** An InputStream reading the remaining bytes of a ByteBuffer. */
+    static class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] dest, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(length, buffer.remaining());
+            buffer.get(dest, offset, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Writes a new pack (see PackFile) object by object.
+ *  The objects are streamed into a temporary pack file as they are added; finish() writes
+ *  the index and moves both files into place, so a pack is never visible half-written. */
+class PackWriter {
+
+    private final File packDir;
+    private final File tempPack;
+    private final FileChannel out;
+    private final Set<ObjectId> added = new HashSet<>();
+    private final List<ObjectId> ids = new ArrayList<>();
+    private final List<long[]> entries = new ArrayList<>();
+    private long position;
+
+    /** Start a new pack under PACKDIR. */
+    PackWriter(File packDir) {
+        this.packDir = packDir;
+        packDir.mkdirs();
+        try {
+            tempPack = File.createTempFile("tmp-", ".pack", packDir);
+            out = FileChannel.open(tempPack.toPath(), StandardOpenOption.WRITE);
+            ByteBuffer header = ByteBuffer.allocate(PackFile.PACK_HEADER_SIZE);
+            header.put(PackFile.PACK_MAGIC).putInt(PackFile.VERSION).putInt(0).flip();
+            writeFully(header);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        position = PackFile.PACK_HEADER_SIZE;
+    }
+
+    /** Whether ID has already been added to this pack. */
+    boolean contains(ObjectId id) {
+        return added.contains(id);
+    }
+
+    /** Number of objects added so far. */
+    int size() {
+        return ids.size();
+    }
+
+    /** Add object ID with contents CONTENTS. Objects that are already added are skipped. */
+    void add(ObjectId id, byte[] contents) {
+        if (added.contains(id)) {
+            return;
+        }
+        try {
+            writeFully(ByteBuffer.wrap(contents));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        record(id, contents.length);
+    }
+
+    /** Add object ID stored in SOURCE, copying its bytes as they are stored.
+     *  If the copy fails, its bytes are dropped and the object is not added. */
+    void add(ObjectId id, ObjectStore source) {
+        if (added.contains(id)) {
+            return;
+        }
+        try {
+            try {
+                source.copyTo(id, out);
+                record(id, out.position() - position);
+            } catch (IllegalArgumentException e) {
+                out.truncate(position);
+                out.position(position);
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Write the index, and move the pack and its index into place.
+     *  Return the new pack file, or null if no object was added. */
+    File finish() {
+        try {
+            // The object count in the header
+            out.write(ByteBuffer.allocate(4).putInt(0, ids.size()), 8);
+            out.force(false);
+            out.close();
+            if (ids.isEmpty()) {
+                tempPack.delete();
+                return null;
+            }
+
+            Integer[] order = new Integer[ids.size()];
+            for (int i = 0; i < order.length; ++i) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (i, j) -> ids.get(i).compareTo(ids.get(j)));
+
+            // The pack is named after the hash of its sorted object IDs
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            for (int i: order) {
+                md.update(ids.get(i).toRaw());
+            }
+            String name = "pack-" + ObjectId.fromRaw(md.digest());
+            File packFile = new File(packDir, name + ".pack");
+            File idxFile = new File(packDir, name + ".idx");
+            File tempIdx = new File(packDir, "tmp-" + name + ".idx");
+
+            int[] fanout = new int[256];
+            for (ObjectId id: ids) {
+                fanout[id.firstByte()] += 1;
+            }
+            FileOutputStream idxOut = new FileOutputStream(tempIdx);
+            try (DataOutputStream idx = new DataOutputStream(new BufferedOutputStream(idxOut))) {
+                idx.write(PackFile.IDX_MAGIC);
+                idx.writeInt(PackFile.VERSION);
+                int cumulative = 0;
+                for (int count: fanout) {
+                    cumulative += count;
+                    idx.writeInt(cumulative);
+                }
+                for (int i: order) {
+                    idx.write(ids.get(i).toRaw());
+                }
+                for (int i: order) {
+                    idx.writeLong(entries.get(i)[0]);
+                }
+                for (int i: order) {
+                    idx.writeInt((int) entries.get(i)[1]);
+                }
+                // Both files must be on disk before they are moved, or a crash could leave a truncated idx
+                idx.flush();
+                idxOut.getFD().sync();
+            }
+
+            // Move the pack first: an idx without its pack is never read
+            Files.move(tempPack.toPath(), packFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tempIdx.toPath(), idxFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            return packFile;
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    private void record(ObjectId id, long length) {
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("object " + id + " is too large to pack");
+        }
+        added.add(id);
+        ids.add(id);
+        entries.add(new long[] {position, length});
+        position += length;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static gitlet.Utils.*;
+
+/** The packs of a pack directory, see PackFile. Writes go into new packs: putAll() streams a whole batch
+ *  of objects into a single pack, which is much cheaper than one file per object when there are many. */
+class PackedObjectStore implements ObjectStore {
+
+    private final File packDir;
+
+    /** The packs of the directory, opened on first use */
+    private List<PackFile> packs;
+
+    PackedObjectStore(File packDir) {
+        this.packDir = packDir;
+    }
+
+    File getDir() {
+        return packDir;
+    }
+
+    /** Return the packs of the directory. */
+    synchronized List<PackFile> packs() {
+        if (packs == null) {
+            packs = new ArrayList<>();
+            List<String> names = plainFilenamesIn(packDir);
+            if (names != null) {
+                for (String name: names) {
+                    // An idx is moved into place after its pack, so the pack of an idx always exists
+                    if (name.startsWith("pack-") && name.endsWith(".idx")) {
+                        String packName = name.substring(0, name.length() - ".idx".length()) + ".pack";
+                        packs.add(new PackFile(join(packDir, packName)));
+                    }
+                }
+            }
+        }
+        return packs;
+    }
+
+    /** Return the pack containing object ID, or null if it is not packed. */
+    PackFile findPack(ObjectId id) {
+        for (PackFile pack: packs()) {
+            if (pack.contains(id)) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean has(ObjectId id) {
+        return findPack(id) != null;
+    }
+
+    @Override
+    public InputStream open(ObjectId id) {
+        return new ByteArrayInputStream(read(id));
+    }
+
+    @Override
+    public byte[] read(ObjectId id) {
+        return packContaining(id).read(id);
+    }
+
+    @Override
+    public long length(ObjectId id) {
+        return packContaining(id).length(id);
+    }
+
+    /** Packed objects are deserialized directly from the mapped pack. */
+    @Override
+    public <T extends Serializable> T readObject(ObjectId id, Class<T> expectedClass) {
+        return packContaining(id).readObject(id, expectedClass);
+    }
+
+    @Override
+    public void copyTo(ObjectId id, WritableByteChannel out) {
+        packContaining(id).copyTo(id, out);
+    }
+
+    @Override
+    public void put(ObjectId id, byte[] contents) {
+        putAll(Map.of(id, contents));
+    }
+
+    @Override
+    public synchronized void putAll(Map<ObjectId, byte[]> objects) {
+        PackWriter writer = new PackWriter(packDir);
+        for (Map.Entry<ObjectId, byte[]> object: objects.entrySet()) {
+            if (!has(object.getKey())) {
+                writer.add(object.getKey(), object.getValue());
+            }
+        }
+        if (writer.finish() != null) {
+            close();
+        }
+    }
+
+    @Override
+    public List<ObjectId> findPrefix(String prefix) {
+        List<ObjectId> found = new ArrayList<>();
+        for (PackFile pack: packs()) {
+            found.addAll(pack.findPrefix(prefix));
+        }
+        return found;
+    }
+
+    /** Close the open packs, so that they are looked for again on next use. */
+    @Override
+    public synchronized void close() {
+        if (packs != null) {
+            for (PackFile pack: packs) {
+                pack.close();
+            }
+            packs = null;
+        }
+    }
+
+    private PackFile packContaining(ObjectId id) {
+        PackFile pack = findPack(id);
+        if (pack == null) {
+            throw new IllegalArgumentException("Unable to load object " + id);
+        }
+        return pack;
+    }
+}
@@ -0,0 +1,250 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/** The reflogs of the branches: for each branch, under .gitlet/logs/[branch name], the history of the
+ *  commits it pointed to, one line "[old id] [new id] [milliseconds] [reason]" per update.
+ *
+ *  Lines are only ever appended, with a single write in append mode, so a crash never damages older entries;
+ *  it may only leave a last line without its newline, which read() skips and append() cuts off first.
+ *  They are read newest first, by reading the file backwards block by block, so showing the last few
+ *  updates of a long reflog reads its end only. A reflog growing past MAX_BYTES is compacted to its
+ *  newest half when appended to; expire() drops the entries older than a given time, and gc calls it
+ *  with the retention window before keeping the commits of the remaining entries alive.
+ */
+class Reflog {
+
+    /** An update of a branch. OLDID is null when the branch was created. */
+    static final class Entry {
+        final ObjectId oldId;
+        final ObjectId newId;
+        final long time;
+        final String reason;
+
+        Entry(ObjectId oldId, ObjectId newId, long time, String reason) {
+            this.oldId = oldId;
+            this.newId = newId;
+            this.time = time;
+            this.reason = reason;
+        }
+
+        String toLine() {
+            return (oldId == null ? NULL_ID : oldId.toString()) + " " + newId + " " + time + " " + reason + "\n";
+        }
+
+        static Entry parse(String line) {
+            String[] fields = line.split(" ", 4);
+            if (fields.length < 3 || !ObjectId.isHex(fields[0]) || !ObjectId.isHex(fields[1])) {
+                throw new IllegalArgumentException("corrupted reflog entry: " + line);
+            }
+            return new Entry(fields[0].equals(NULL_ID) ? null : ObjectId.fromHex(fields[0]),
+                    ObjectId.fromHex(fields[1]), Long.parseLong(fields[2]), fields.length > 3 ? fields[3] : "");
+        }
+    }
+
+    /** The old ID of the entry creating a branch. */
+    static final String NULL_ID = "0".repeat(ObjectId.HEX_LENGTH);
+
+    /** Size past which a reflog is compacted to its newest half, in bytes. */
+    static final long MAX_BYTES = Long.getLong("gitlet.reflog.maxBytes", 1 << 20);
+
+    /** How long gc keeps the entries of the reflogs, and the commits they point to, in days. */
+    static final long RETENTION_DAYS = Long.getLong("gitlet.reflog.days", 90);
+
+    /** Size of the blocks read backwards. */
+    private static final int BLOCK_SIZE = 8192;
+
+    private final File logsDir;
+
+    /** The reflogs under LOGSDIR. */
+    Reflog(File logsDir) {
+        this.logsDir = logsDir;
+    }
+
+    /** Record that the branch BRANCHNAME moved from OLDID (null if it was created) to NEWID, because of REASON. */
+    void append(String branchName, ObjectId oldId, ObjectId newId, String reason) {
+        File log = join(logsDir, branchName);
+        log.getParentFile().mkdirs();
+        Entry entry = new Entry(oldId, newId, System.currentTimeMillis(), reason.replace('\n', ' ').strip());
+        dropTornLine(log);
+        try (OutputStream out = new FileOutputStream(log, true)) {
+            out.write(entry.toLine().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw error(e.getMessage());
+        }
+        if (log.length() > MAX_BYTES) {
+            compact(branchName, MAX_BYTES / 2, 0);
+        }
+    }
+
+    /** Return the newest LIMIT entries of the reflog of BRANCHNAME, newest first. */
+    List<Entry> read(String branchName, int limit) {
+        List<Entry> entries = new ArrayList<>();
+        File log = join(logsDir, branchName);
+        if (!log.isFile()) {
+            return entries;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(log, "r")) {
+            long end = file.length();
+            // A last line without its newline was torn by an interrupted append
+            boolean tornLine = end > 0 && lastByte(file) != '\n';
+            // The bytes of the line being assembled, read back to front
+            byte[] pending = new byte[0];
+            byte[] block = new byte[BLOCK_SIZE];
+            while (end > 0 && entries.size() < limit) {
+                long start = Math.max(0, end - BLOCK_SIZE);
+                int length = (int) (end - start);
+                file.seek(start);
+                file.readFully(block, 0, length);
+                int lineEnd = length;
+                for (int i = length - 1; i >= -1 && entries.size() < limit; --i) {
+                    if (i >= 0 && block[i] != '\n') {
+                        continue;
+                    }
+                    if (i < 0 && start > 0) {
+                        break;
+                    }
+                    byte[] line = new byte[lineEnd - (i + 1) + pending.length];
+                    System.arraycopy(block, i + 1, line, 0, lineEnd - (i + 1));
+                    System.arraycopy(pending, 0, line, lineEnd - (i + 1), pending.length);
+                    pending = new byte[0];
+                    if (tornLine) {
+                        tornLine = false;
+                    } else if (line.length > 0) {
+                        entries.add(Entry.parse(new String(line, StandardCharsets.UTF_8)));
+                    }
+                    lineEnd = i;
+                }
+                if (lineEnd > 0 && start > 0) {
+                    // The block starts in the middle of a line; keep its tail for the next block
+                    byte[] tail = new byte[lineEnd + pending.length];
+                    System.arraycopy(block, 0, tail, 0, lineEnd);
+                    System.arraycopy(pending, 0, tail, lineEnd, pending.length);
+                    pending = tail;
+                }
+                end = start;
+            }
+        } catch (IOException e) {
+            throw error(e.getMessage());
+        }
+        return entries;
+    }
+
+    /** Cut the last line of LOG off if an interrupted append left it without its newline, so that the next
+     *  line is not appended to it. */
+    private static void dropTornLine(File log) {
+        if (!log.isFile() || log.length() == 0) {
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            long end = file.length();
+            if (lastByte(file) == '\n') {
+                return;
+            }
+            while (end > 0) {
+                file.seek(end - 1);
+                if (file.read() == '\n') {
+                    break;
+                }
+                end -= 1;
+            }
+            file.setLength(end);
+        } catch (IOException e) {
+            throw error(e.getMessage());
+        }
+    }
+
+    private static int lastByte(RandomAccessFile file) throws IOException {
+        file.seek(file.length() - 1);
+        return file.read();
+    }
+
+    /** Return every entry of the reflog of BRANCHNAME, newest first. */
+    List<Entry> readAll(String branchName) {
+        return read(branchName, Integer.MAX_VALUE);
+    }
+
+    /** Return the names of the branches that have a reflog. */
+    List<String> branchNames() {
+        List<String> names = new ArrayList<>();
+        collectNames(logsDir, "", names);
+        Collections.sort(names);
+        return names;
+    }
+
+    /** Drop the entries older than CUTOFF milliseconds from every reflog. Return the number dropped. */
+    int expire(long cutoff) {
+        int dropped = 0;
+        for (String branchName: branchNames()) {
+            dropped += compact(branchName, Long.MAX_VALUE, cutoff);
+        }
+        return dropped;
+    }
+
+    /** Delete the reflog of BRANCHNAME. */
+    void delete(String branchName) {
+        File log = join(logsDir, branchName);
+        log.delete();
+        File dir = log.getParentFile();
+        while (dir != null && !dir.equals(logsDir) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    /** Rewrite the reflog of BRANCHNAME with its newest entries that fit in MAXBYTES and are not older than
+     *  CUTOFF. The new reflog is written aside and renamed into place. Return the number of entries dropped. */
+    private int compact(String branchName, long maxBytes, long cutoff) {
+        List<Entry> entries = readAll(branchName);
+        List<String> kept = new ArrayList<>();
+        long size = 0;
+        for (Entry entry: entries) {
+            String line = entry.toLine();
+            if (entry.time < cutoff || size + line.length() > maxBytes) {
+                break;
+            }
+            kept.add(line);
+            size += line.length();
+        }
+        if (kept.size() == entries.size()) {
+            return 0;
+        }
+        Collections.reverse(kept);
+        File log = join(logsDir, branchName);
+        File temp = join(log.getParentFile(), "tmp-" + log.getName());
+        writeContents(temp, String.join("", kept));
+        try {
+            Files.move(temp.toPath(), log.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw error(e.getMessage());
+        }
+        return entries.size() - kept.size();
+    }
+
+    private static void collectNames(File dir, String prefix, List<String> names) {
+        String[] entries = dir.list();
+        if (entries == null) {
+            return;
+        }
+        for (String entry: entries) {
+            File file = join(dir, entry);
+            if (file.isDirectory()) {
+                collectNames(file, prefix + entry + "/", names);
+            } else if (!entry.startsWith("tmp-")) {
+                names.add(prefix + entry);
+            }
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** The branches of a repository, each a name (like "master" or "origin/master") pointing to a commit.
+ *
+ *  A branch is either loose, a file under .gitlet/branches holding the ID of its commit, or packed, a line
+ *  "[commit id] [name]" of .gitlet/packed-refs, whose lines are sorted by name. A loose branch overrides a
+ *  packed one of the same name, so moving a branch only writes its loose file. pack-refs moves every loose
+ *  branch into packed-refs, after which listing the branches reads one file instead of one file per branch,
+ *  and looking one up is a binary search over the mapped file.
+ *
+ *  Every change is atomic: files are written aside and renamed into place, a branch is created by
+ *  hardlinking its file into place (which fails if another process created it first), and packed-refs is
+ *  only rewritten while holding packed-refs.lock, which is then renamed over it.
+ *  Every creation and move of a branch is recorded in its reflog, see Reflog.
+ */
+class Refs {
+
+    private final File branchesDir;
+    private final File packedFile;
+    private final File lockFile;
+    private final Reflog reflog;
+
+    /** The mapped packed-refs, mapped on first use; null if there is none. */
+    private MappedByteBuffer packed;
+    private boolean packedLoaded;
+
+    /** The branches of the repository whose .gitlet directory is GITLETDIR. */
+    Refs(File gitletDir) {
+        this.branchesDir = join(gitletDir, "branches");
+        this.packedFile = join(gitletDir, "packed-refs");
+        this.lockFile = join(gitletDir, "packed-refs.lock");
+        this.reflog = new Reflog(join(gitletDir, "logs"));
+    }
+
+    /** Return the commit the branch NAME points to, or null if there is no such branch.
+     *  Throws IllegalArgumentException if the branch does not hold a commit ID. */
+    ObjectId read(String name) {
+        File loose = join(branchesDir, name);
+        if (loose.isFile()) {
+            return ObjectId.fromHex(readContentsAsString(loose).strip());
+        }
+        return readPacked(name);
+    }
+
+    /** Whether the branch NAME exists. */
+    boolean exists(String name) {
+        return join(branchesDir, name).isFile() || readPacked(name) != null;
+    }
+
+    /** Return the reflogs of the branches. */
+    Reflog reflog() {
+        return reflog;
+    }
+
+    /** Point the branch NAME at COMMITHASH, creating it if needed, and record REASON in its reflog. */
+    void update(String name, ObjectId commitHash, String reason) {
+        ObjectId oldHash = read(name);
+        File loose = join(branchesDir, name);
+        File temp = writeAside(loose, commitHash);
+        try {
+            Files.move(temp.toPath(), loose.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            temp.delete();
+            throw error(e.getMessage());
+        }
+        reflog.append(name, oldHash, commitHash, reason);
+    }
+
+    /** Create the branch NAME pointing at COMMITHASH, and record REASON in its reflog.
+     *  Return false if it already exists. */
+    boolean create(String name, ObjectId commitHash, String reason) {
+        if (readPacked(name) != null) {
+            return false;
+        }
+        File loose = join(branchesDir, name);
+        File temp = writeAside(loose, commitHash);
+        try {
+            // link(2) fails if the target exists, so two processes cannot both create the branch
+            Files.createLink(loose.toPath(), temp.toPath());
+            reflog.append(name, null, commitHash, reason);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        } catch (UnsupportedOperationException | IOException e) {
+            if (loose.exists()) {
+                return false;
+            }
+            try {
+                Files.move(temp.toPath(), loose.toPath());
+                reflog.append(name, null, commitHash, reason);
+                return true;
+            } catch (IOException moveFailed) {
+                return false;
+            }
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /** Delete the branch NAME and its reflog. Return false if it does not exist. */
+    boolean delete(String name) {
+        File loose = join(branchesDir, name);
+        if (readPacked(name) == null) {
+            if (!loose.delete()) {
+                return false;
+            }
+            deleteEmptyDirs(loose.getParentFile());
+            reflog.delete(name);
+            return true;
+        }
+        // Drop the packed branch first, so that the branch never points to its packed commit once the
+        // loose file is gone
+        lock();
+        try {
+            TreeMap<byte[], ObjectId> branches = readAllPacked();
+            branches.remove(encode(name));
+            writePacked(branches);
+        } finally {
+            lockFile.delete();
+        }
+        if (loose.delete()) {
+            deleteEmptyDirs(loose.getParentFile());
+        }
+        reflog.delete(name);
+        return true;
+    }
+
+    /** Return the names of all branches, loose or packed, in lexicographical order. */
+    List<String> names() {
+        TreeSet<String> names = new TreeSet<>(looseNames());
+        for (byte[] name: readAllPacked().keySet()) {
+            names.add(new String(name, StandardCharsets.UTF_8));
+        }
+        return new ArrayList<>(names);
+    }
+
+    /** Move every loose branch into packed-refs, together with the branches EXTRA, which override the others.
+     *  Return the number of packed branches. */
+    int pack(Map<String, ObjectId> extra) {
+        lock();
+        List<File> packedLoose = new ArrayList<>();
+        TreeMap<byte[], ObjectId> branches;
+        try {
+            branches = readAllPacked();
+            for (String name: looseNames()) {
+                File loose = join(branchesDir, name);
+                branches.put(encode(name), ObjectId.fromHex(readContentsAsString(loose).strip()));
+                packedLoose.add(loose);
+            }
+            for (Map.Entry<String, ObjectId> branch: extra.entrySet()) {
+                branches.put(encode(branch.getKey()), branch.getValue());
+            }
+            writePacked(branches);
+        } finally {
+            lockFile.delete();
+        }
+        for (File loose: packedLoose) {
+            loose.delete();
+            deleteEmptyDirs(loose.getParentFile());
+        }
+        return branches.size();
+    }
+
+    /** Return the names of the loose branches, in lexicographical order. */
+    private List<String> looseNames() {
+        List<String> names = new ArrayList<>();
+        collectLooseNames(branchesDir, "", names);
+        Collections.sort(names);
+        return names;
+    }
+
+    private static void collectLooseNames(File dir, String prefix, List<String> names) {
+        String[] entries = dir.list();
+        if (entries == null) {
+            return;
+        }
+        for (String entry: entries) {
+            File file = join(dir, entry);
+            if (file.isDirectory()) {
+                collectLooseNames(file, prefix + entry + "/", names);
+            } else if (!entry.startsWith("tmp-")) {
+                names.add(prefix + entry);
+            }
+        }
+    }
+
+    /** Return the commit of the packed branch NAME, or null, by a binary search over the lines of packed-refs. */
+    private synchronized ObjectId readPacked(String name) {
+        MappedByteBuffer lines = packed();
+        if (lines == null) {
+            return null;
+        }
+        byte[] key = encode(name);
+        // LO and HI always lie at the start of a line
+        int lo = 0;
+        int hi = lines.limit();
+        while (lo < hi) {
+            int start = (lo + hi) >>> 1;
+            while (start > lo && lines.get(start - 1) != '\n') {
+                start -= 1;
+            }
+            int end = start;
+            while (end < hi && lines.get(end) != '\n') {
+                end += 1;
+            }
+            int cmp = compareName(lines, start + ObjectId.HEX_LENGTH + 1, end, key);
+            if (cmp == 0) {
+                byte[] hex = new byte[ObjectId.HEX_LENGTH];
+                lines.get(start, hex);
+                return ObjectId.fromHex(new String(hex, StandardCharsets.US_ASCII));
+            } else if (cmp < 0) {
+                lo = end + 1;
+            } else {
+                hi = start;
+            }
+        }
+        return null;
+    }
+
+    /** Return every packed branch, by encoded name. */
+    private synchronized TreeMap<byte[], ObjectId> readAllPacked() {
+        TreeMap<byte[], ObjectId> branches = new TreeMap<>(Arrays::compareUnsigned);
+        MappedByteBuffer lines = packed();
+        if (lines == null) {
+            return branches;
+        }
+        int start = 0;
+        while (start < lines.limit()) {
+            int end = start;
+            while (end < lines.limit() && lines.get(end) != '\n') {
+                end += 1;
+            }
+            byte[] line = new byte[end - start];
+            lines.get(start, line);
+            if (line.length <= ObjectId.HEX_LENGTH + 1 || line[ObjectId.HEX_LENGTH] != ' ') {
+                throw new IllegalArgumentException("corrupted packed-refs");
+            }
+            branches.put(Arrays.copyOfRange(line, ObjectId.HEX_LENGTH + 1, line.length),
+                    ObjectId.fromHex(new String(line, 0, ObjectId.HEX_LENGTH, StandardCharsets.US_ASCII)));
+            start = end + 1;
+        }
+        return branches;
+    }
+
+    /** Write BRANCHES into the lock file, then rename it over packed-refs. The lock must be held. */
+    private synchronized void writePacked(TreeMap<byte[], ObjectId> branches) {
+        StringBuilder lines = new StringBuilder();
+        for (Map.Entry<byte[], ObjectId> branch: branches.entrySet()) {
+            lines.append(branch.getValue()).append(' ')
+                    .append(new String(branch.getKey(), StandardCharsets.UTF_8)).append('\n');
+        }
+        writeContents(lockFile, lines.toString());
+        try {
+            Files.move(lockFile.toPath(), packedFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw error(e.getMessage());
+        }
+        packed = null;
+        packedLoaded = false;
+    }
+
+    /** Return the mapped packed-refs, or null if there is none. */
+    private MappedByteBuffer packed() {
+        if (!packedLoaded) {
+            packedLoaded = true;
+            packed = null;
+            if (packedFile.isFile() && packedFile.length() > 0) {
+                try (FileChannel channel = FileChannel.open(packedFile.toPath(), StandardOpenOption.READ)) {
+                    packed = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                } catch (IOException e) {
+                    throw error(e.getMessage());
+                }
+            }
+        }
+        return packed;
+    }
+
+    /** Take packed-refs.lock, or fail if another process holds it. */
+    private void lock() {
+        try {
+            Files.createFile(lockFile.toPath());
+        } catch (FileAlreadyExistsException e) {
+            raiseError("Another gitlet process is updating the branches; "
+                    + "delete " + lockFile.getPath() + " if none is running.");
+        } catch (IOException e) {
+            throw error(e.getMessage());
+        }
+    }
+
+    /** Write COMMITHASH into a new temporary file next to LOOSE, and return it. */
+    private static File writeAside(File loose, ObjectId commitHash) {
+        loose.getParentFile().mkdirs();
+        try {
+            File temp = File.createTempFile("tmp-", ".ref", loose.getParentFile());
+            writeContents(temp, commitHash.toString());
+            return temp;
+        } catch (IOException e) {
+            throw error(e.getMessage());
+        }
+    }
+
+    /** Delete DIR and its parents while they are empty, up to the branches directory. */
+    private void deleteEmptyDirs(File dir) {
+        while (dir != null && !dir.equals(branchesDir) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    private static byte[] encode(String name) {
+        return name.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Compare the name in bytes [FROM, TO) of LINES with KEY, as unsigned bytes. */
+    private static int compareName(MappedByteBuffer lines, int from, int to, byte[] key) {
+        int length = Math.min(to - from, key.length);
+        for (int k = 0; k < length; ++k) {
+            int cmp = Integer.compare(lines.get(from + k) & 0xff, key[k] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(to - from, key.length);
+    }
+}
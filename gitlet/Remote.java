@@ -0,0 +1,154 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static gitlet.Utils.*;
+
+/** A gitlet repository reached through the path of its .gitlet directory, on the same or a mounted filesystem.
+ *
+ *  fetch and push copy history from one repository to another in three steps. The tip of the branch to send
+ *  is read on the sending side. The commits missing on the receiving side are found by walking back from that
+ *  tip, and stopping at every commit the receiver already has: a repository always holds the whole history of
+ *  its commits, so these are the common ancestors of both sides. The missing commits and the blobs they
+ *  introduce are then streamed into a single new pack of the receiver. The work is thus proportional to
+ *  the new history, not to the size of either repository.
+ */
+class Remote {
+
+    private final File gitletDir;
+    private final File objectsDir;
+
+    /** The branches of the repository */
+    private final Refs refs;
+
+    /** The objects of the repository and of its alternates */
+    private final ObjectStore objects;
+
+    /** The repository whose .gitlet directory is GITLETDIR, which must use the current format. */
+    Remote(File gitletDir) {
+        RepoHelper.checkFormat(gitletDir);
+        this.gitletDir = gitletDir;
+        this.objectsDir = join(gitletDir, "objects");
+        this.refs = new Refs(gitletDir);
+        this.objects = ObjectStore.forDirectory(objectsDir);
+    }
+
+    File getDir() {
+        return gitletDir;
+    }
+
+    /** Return the hash function naming the objects of the repository. */
+    HashAlgorithm getHashAlgorithm() {
+        return HashAlgorithm.of(gitletDir);
+    }
+
+    /** Return the names of the branches of the repository, in lexicographical order. */
+    List<String> branchNames() {
+        return refs.names();
+    }
+
+    /** Return the name of the branch HEAD points to. */
+    String headBranchName() {
+        String head = readContentsAsString(join(gitletDir, "HEAD")).replace(File.separatorChar, '/');
+        String branches = ".gitlet/branches/";
+        return head.substring(head.indexOf(branches) + branches.length());
+    }
+
+    /** Return the commit the branch BRANCHNAME points to, or null if there is no such branch. */
+    ObjectId branchTip(String branchName) {
+        return refs.read(branchName);
+    }
+
+    /** Point the branch BRANCHNAME at the commit COMMITHASH, creating it if needed, for REASON. */
+    void setBranchTip(String branchName, ObjectId commitHash, String reason) {
+        refs.update(branchName, commitHash, reason);
+    }
+
+    /** Whether object HASHID exists, in the repository or in one of its alternates */
+    boolean hasObject(ObjectId hashID) {
+        return objects.has(hashID);
+    }
+
+    /** Return the commit with sha1 HASHID. Throws IllegalArgumentException if it doesn't exist. */
+    Commit readCommit(ObjectId hashID) {
+        return objects.readObject(hashID, Commit.class);
+    }
+
+    /** Close the open packs. */
+    void close() {
+        objects.close();
+    }
+
+    /** Copy the commits reachable from TIP that are missing in DEST, together with the blobs they introduce,
+     *  from SOURCE into a single new pack of DEST. Return the number of objects copied. */
+    static int transfer(Remote source, Remote dest, ObjectId tip) {
+        PackWriter writer = new PackWriter(join(dest.objectsDir, "pack"));
+        for (ObjectId commitHash: missingCommits(source, dest, tip)) {
+            Commit commit = source.readCommit(commitHash);
+            source.copyTo(commitHash, writer);
+
+            // A blob the commit shares with one of its parents is either already in DEST,
+            // or sent along with that parent, so only the paths changed against every parent are looked at
+            List<Snapshot> snapshots = new ArrayList<>();
+            snapshots.add(commit.getSnapshot());
+            if (commit.getParent() != null) {
+                snapshots.add(source.readCommit(commit.getParent()).getSnapshot());
+            }
+            if (commit.getSecondParent() != null) {
+                snapshots.add(source.readCommit(commit.getSecondParent()).getSnapshot());
+            }
+            Snapshot.join((path, ids) -> {
+                ObjectId blobHash = ids[0];
+                if (blobHash == null || writer.contains(blobHash)) {
+                    return;
+                }
+                for (int i = 1; i < ids.length; ++i) {
+                    if (blobHash.equals(ids[i])) {
+                        return;
+                    }
+                }
+                if (!dest.hasObject(blobHash)) {
+                    source.copyTo(blobHash, writer);
+                }
+            }, snapshots.toArray(new Snapshot[0]));
+        }
+        int copied = writer.size();
+        writer.finish();
+        dest.close();
+        return copied;
+    }
+
+    /** Return the commits reachable from TIP in SOURCE that DEST does not have. */
+    private static List<ObjectId> missingCommits(Remote source, Remote dest, ObjectId tip) {
+        List<ObjectId> missing = new ArrayList<>();
+        Set<ObjectId> visited = new HashSet<>();
+        Deque<ObjectId> queue = new ArrayDeque<>();
+        queue.addLast(tip);
+        while (!queue.isEmpty()) {
+            ObjectId commitHash = queue.pollFirst();
+            if (!visited.add(commitHash) || dest.hasObject(commitHash)) {
+                continue;
+            }
+            missing.add(commitHash);
+            Commit commit = source.readCommit(commitHash);
+            if (commit.getParent() != null) {
+                queue.addLast(commit.getParent());
+            }
+            if (commit.getSecondParent() != null) {
+                queue.addLast(commit.getSecondParent());
+            }
+        }
+        return missing;
+    }
+
+    /** Add object HASHID to WRITER, copying its bytes as they are stored. */
+    private void copyTo(ObjectId hashID, PackWriter writer) {
+        writer.add(hashID, objects);
+    }
+}
@@ -0,0 +1,289 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Finds the files renamed or copied between two snapshots.
+ *
+ *  The paths removed from the first snapshot are paired with the paths added in the second one by
+ *  exact blob hash first. The added paths left are then matched by similarity: every blob gets a MinHash
+ *  sketch of its set of lines (SKETCH_SIZE minimums of independent hashes), whose fraction of equal
+ *  minimums estimates the Jaccard similarity of two blobs. Instead of comparing every pair, the sketches are
+ *  split into BANDS bands, and only the blobs sharing a whole band with another are compared (locality
+ *  sensitive hashing), so that thousands of moved files don't cost millions of comparisons.
+ *  Blobs never change, so their sketches are computed once and kept in the SketchCache given by the caller.
+ *  The detector reads nothing but through its ContentReaders and that cache, so it works on any ObjectStore.
+ */
+class RenameDetector {
+
+    /** A path of the first snapshot found again at another path of the second one. */
+    static final class Rename {
+        final String from;
+        final String to;
+        final boolean copy;
+        /** Estimated similarity, in percent. */
+        final int score;
+
+        Rename(String from, String to, boolean copy, int score) {
+            this.from = from;
+            this.to = to;
+            this.copy = copy;
+            this.score = score;
+        }
+    }
+
+    /** Reads the contents of a file of a snapshot, given its path and blob hash. */
+    interface ContentReader {
+        byte[] read(String path, ObjectId blobHash);
+    }
+
+    /** Number of hashes of a sketch. */
+    static final int SKETCH_SIZE = 64;
+
+    /** Number of bands of the sketch used to find candidate pairs; each holds SKETCH_SIZE / BANDS hashes. */
+    static final int BANDS = 16;
+
+    /** Minimum similarity of a rename or copy, in percent. */
+    static final int MIN_SCORE = 50;
+
+    private final Snapshot before;
+    private final Snapshot after;
+    private final ContentReader beforeReader;
+    private final ContentReader afterReader;
+    private final SketchCache sketches;
+    private final boolean findCopies;
+
+    /** Prepare to compare BEFORE and AFTER, whose contents are read with BEFOREREADER and AFTERREADER
+     *  when their sketches are not in SKETCHES. If FINDCOPIES, added paths may also be copies of paths
+     *  of BEFORE that are kept. */
+    RenameDetector(Snapshot before, Snapshot after, ContentReader beforeReader, ContentReader afterReader,
+                   SketchCache sketches, boolean findCopies) {
+        this.before = before;
+        this.after = after;
+        this.beforeReader = beforeReader;
+        this.afterReader = afterReader;
+        this.sketches = sketches;
+        this.findCopies = findCopies;
+    }
+
+    /** Return the renames and copies from BEFORE to AFTER, in the order of their target paths. */
+    List<Rename> detect() {
+        Map<ObjectId, List<String>> removedByHash = new LinkedHashMap<>();
+        List<String> removed = new ArrayList<>();
+        List<String> added = new ArrayList<>();
+        List<String> modified = new ArrayList<>();
+        Snapshot.join((path, ids) -> {
+            if (ids[1] == null) {
+                removed.add(path);
+                removedByHash.computeIfAbsent(ids[0], id -> new ArrayList<>()).add(path);
+            } else if (ids[0] == null) {
+                added.add(path);
+            } else if (!ids[0].equals(ids[1])) {
+                modified.add(path);
+            }
+        }, before, after);
+        if (added.isEmpty() || (removed.isEmpty() && !findCopies)) {
+            return new ArrayList<>();
+        }
+
+        // Exact renames, then exact copies of any path of BEFORE
+        Map<String, Rename> found = new HashMap<>();
+        Set<String> usedSources = new HashSet<>();
+        Map<ObjectId, String> beforeByHash = null;
+        List<String> unmatched = new ArrayList<>();
+        for (String path: added) {
+            ObjectId blobHash = after.get(path);
+            List<String> sources = removedByHash.get(blobHash);
+            if (sources != null && !sources.isEmpty()) {
+                String source = sources.remove(0);
+                usedSources.add(source);
+                found.put(path, new Rename(source, path, false, 100));
+                continue;
+            }
+            if (findCopies) {
+                if (beforeByHash == null) {
+                    beforeByHash = new HashMap<>();
+                    Snapshot.Cursor cursor = before.cursor();
+                    while (cursor.next()) {
+                        beforeByHash.putIfAbsent(cursor.id(), cursor.path());
+                    }
+                }
+                String source = beforeByHash.get(blobHash);
+                if (source != null) {
+                    found.put(path, new Rename(source, path, true, 100));
+                    continue;
+                }
+            }
+            unmatched.add(path);
+        }
+
+        // Similar renames, then similar copies of the modified paths
+        List<String> sources = new ArrayList<>();
+        for (String path: removed) {
+            if (!usedSources.contains(path)) {
+                sources.add(path);
+            }
+        }
+        int renameSources = sources.size();
+        if (findCopies) {
+            sources.addAll(modified);
+        }
+        if (!unmatched.isEmpty() && !sources.isEmpty()) {
+            matchSimilar(sources, renameSources, unmatched, found);
+        }
+
+        List<Rename> renames = new ArrayList<>();
+        for (String path: added) {
+            if (found.containsKey(path)) {
+                renames.add(found.get(path));
+            }
+        }
+        return renames;
+    }
+
+    /** Pair the paths TARGETS of AFTER with the most similar paths SOURCES of BEFORE, the first RENAMESOURCES
+     *  of which were removed (and can be renamed once), the others kept (and can only be copied). */
+    private void matchSimilar(List<String> sources, int renameSources, List<String> targets, Map<String, Rename> found) {
+        List<long[]> sourceSketches = sketchAll(sources, before, beforeReader);
+        List<long[]> targetSketches = sketchAll(targets, after, afterReader);
+
+        // Index the bands of the sources
+        Map<Long, List<Integer>> buckets = new HashMap<>();
+        for (int s = 0; s < sources.size(); ++s) {
+            if (sourceSketches.get(s) != null) {
+                for (int band = 0; band < BANDS; ++band) {
+                    buckets.computeIfAbsent(bandKey(sourceSketches.get(s), band), k -> new ArrayList<>()).add(s);
+                }
+            }
+        }
+
+        // Score the candidate pairs, best first
+        List<int[]> pairs = new ArrayList<>();
+        for (int t = 0; t < targets.size(); ++t) {
+            long[] sketch = targetSketches.get(t);
+            if (sketch == null) {
+                continue;
+            }
+            Set<Integer> candidates = new HashSet<>();
+            for (int band = 0; band < BANDS; ++band) {
+                List<Integer> bucket = buckets.get(bandKey(sketch, band));
+                if (bucket != null) {
+                    candidates.addAll(bucket);
+                }
+            }
+            for (int s: candidates) {
+                int score = similarity(sketch, sourceSketches.get(s));
+                if (score >= MIN_SCORE) {
+                    pairs.add(new int[] {score, s, t});
+                }
+            }
+        }
+        pairs.sort((p1, p2) -> p1[0] != p2[0] ? Integer.compare(p2[0], p1[0])
+                : p1[1] != p2[1] ? Integer.compare(p1[1], p2[1]) : Integer.compare(p1[2], p2[2]));
+
+        Set<Integer> renamedSources = new HashSet<>();
+        for (int[] pair: pairs) {
+            String target = targets.get(pair[2]);
+            if (found.containsKey(target)) {
+                continue;
+            }
+            int s = pair[1];
+            boolean isRename = s < renameSources && !renamedSources.contains(s);
+            if (!isRename && !findCopies) {
+                continue;
+            }
+            if (isRename) {
+                renamedSources.add(s);
+            }
+            found.put(target, new Rename(sources.get(s), target, !isRename, pair[0]));
+        }
+    }
+
+    /** Return the sketches of the blobs of PATHS in SNAPSHOT, read with READER when not cached.
+     *  Empty blobs have no sketch (null). */
+    private List<long[]> sketchAll(List<String> paths, Snapshot snapshot, ContentReader reader) {
+        List<String> missing = new ArrayList<>();
+        Set<ObjectId> missingIds = new HashSet<>();
+        for (String path: paths) {
+            ObjectId blobHash = snapshot.get(path);
+            if (!sketches.contains(blobHash) && missingIds.add(blobHash)) {
+                missing.add(path);
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<long[]> computed = RepoHelper.parallelMap(missing,
+                    path -> sketch(reader.read(path, snapshot.get(path))));
+            Map<ObjectId, long[]> newSketches = new HashMap<>();
+            for (int i = 0; i < missing.size(); ++i) {
+                newSketches.put(snapshot.get(missing.get(i)), computed.get(i));
+            }
+            sketches.putAll(newSketches);
+        }
+        List<long[]> result = new ArrayList<>(paths.size());
+        for (String path: paths) {
+            result.add(sketches.get(snapshot.get(path)));
+        }
+        return result;
+    }
+
+    /** Return the MinHash sketch of the set of lines of CONTENT, or null if it has no line. */
+    static long[] sketch(byte[] content) {
+        if (content.length == 0) {
+            return null;
+        }
+        long[] sketch = new long[SKETCH_SIZE];
+        java.util.Arrays.fill(sketch, Long.MAX_VALUE);
+        int start = 0;
+        while (start < content.length) {
+            int end = start;
+            while (end < content.length && content[end] != '\n') {
+                end += 1;
+            }
+            // 64-bit FNV-1a of the line, then one independent mix per hash of the sketch
+            long lineHash = 0xcbf29ce484222325L;
+            for (int i = start; i < end; ++i) {
+                lineHash = (lineHash ^ (content[i] & 0xff)) * 0x100000001b3L;
+            }
+            for (int k = 0; k < SKETCH_SIZE; ++k) {
+                long h = mix(lineHash + k * 0x9e3779b97f4a7c15L);
+                if (h < sketch[k]) {
+                    sketch[k] = h;
+                }
+            }
+            start = end + 1;
+        }
+        return sketch;
+    }
+
+    /** The estimated similarity of the blobs of sketches S1 and S2, in percent. */
+    static int similarity(long[] s1, long[] s2) {
+        int equal = 0;
+        for (int k = 0; k < SKETCH_SIZE; ++k) {
+            if (s1[k] == s2[k]) {
+                equal += 1;
+            }
+        }
+        return equal * 100 / SKETCH_SIZE;
+    }
+
+    private static long bandKey(long[] sketch, int band) {
+        int rows = SKETCH_SIZE / BANDS;
+        long key = band;
+        for (int k = band * rows; k < (band + 1) * rows; ++k) {
+            key = mix(key ^ sketch[k]);
+        }
+        return key;
+    }
+
+    /** The finalizer of SplitMix64, a cheap bijective mix of the bits of X. */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+}
@@ -3,7 +3,20 @@ package gitlet;
 import java.awt.datatransfer.SystemFlavorMap;
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import static gitlet.Utils.*;
 import gitlet.Commit;
 import java.util.List;
@@ -12,6 +25,40 @@ public class RepoHelper {
 
     public static final File OBJECTS = join(".gitlet", "objects");
 
+    /** The directory of pack files, see PackFile */
+    public static final File PACKS = join(OBJECTS, "pack");
+
+    /** The alternates file, listing the object directories of other repositories whose objects
+     *  this repository may use as its own, or directories of packs, one absolute path per line */
+    public static final File ALTERNATES = join(OBJECTS, "info", "alternates");
+
+    /** The cached MinHash sketches of the blobs of the repository, see SketchCache */
+    public static final File SKETCHES = join(OBJECTS, "info", "sketches");
+
+    /** The objects of the repository and of its alternates, opened on first use */
+    private static LayeredObjectStore objectStore;
+
+    /** The hash function of the repository, read on first use; see HashAlgorithm */
+    private static volatile HashAlgorithm hashAlgorithm;
+
+    /** The sketch cache of the repository, opened on first use */
+    private static SketchCache sketchCache;
+
+    /** The branches of the repository, read on first use */
+    private static Refs refs;
+
+    /** The cone of the sparse checkout, loaded on first use; see SparseCheckout */
+    private static SparseCheckout sparseCheckout;
+    private static boolean sparseCheckoutLoaded;
+
+    /** The compiled .gitletignore of the working directory, loaded on first use */
+    private static IgnoreMatcher ignoreMatcher;
+
+    /** The version of the on-disk format of commits, snapshots and the staging area, recorded in .gitlet/format.
+     *  Repositories without that file were created before commits held ObjectIds and Snapshots, and their
+     *  serialized objects can't be read any more. Bump it whenever the serialized form of these classes changes. */
+    public static final int FORMAT_VERSION = 1;
+
     /** If repo has been initialized, command "init" will cause failure;
      * If repo hasn't been initialized, commands other than "init" will cause failure.
      */
@@ -28,93 +75,191 @@ public class RepoHelper {
                 System.out.println("Not in an initialized Gitlet directory.");
                 System.exit(0);
             }
+            checkFormat(GITLET);
         }
     }
 
-    /** A small util function that maps a 40-char sha1 string to
-     * the relative path of its corresponding commit file*/
-    public static File hashToPath(String hashID) {
-        return join(OBJECTS, hashID.substring(0, 2), hashID.substring(2));
+    /** Record that the repository whose .gitlet directory is GITLETDIR uses the current format */
+    public static void saveFormat(File gitletDir) {
+        writeContents(join(gitletDir, "format"), FORMAT_VERSION + "\n");
     }
 
+    /** Exit with an error unless the repository whose .gitlet directory is GITLETDIR uses the current format */
+    public static void checkFormat(File gitletDir) {
+        File formatFile = join(gitletDir, "format");
+        String format = formatFile.isFile() ? readContentsAsString(formatFile).strip() : "0";
+        if (!format.equals(String.valueOf(FORMAT_VERSION))) {
+            raiseError("The repository at " + gitletDir.getPath() + " uses on-disk format " + format
+                    + ", which this version of gitlet can't read (it reads format " + FORMAT_VERSION + ").");
+        }
+    }
 
-    /** Save the file as a blob object under .gitlet/objects */
-    public static void saveBlob(File blob, String blobHash) {
+    /** Return the object store of the repository: its loose objects, its packs, then those of its alternates.
+     *  All the objects of the repository are read and written through it. */
+    public static synchronized LayeredObjectStore objectStore() {
+        if (objectStore == null) {
+            objectStore = ObjectStore.forDirectory(OBJECTS);
+        }
+        return objectStore;
+    }
 
-        File blobPath = hashToPath(blobHash);
+    /** Return the loose objects of the repository itself, the top layer of objectStore() */
+    public static LooseObjectStore looseObjects() {
+        return (LooseObjectStore) objectStore().getLayers().get(0);
+    }
 
-        // If this blob has been created before, then we don't need to save it again.
-        if (blobPath.exists()) {
-            return;
+    /** Return the packs of the repository itself, the second layer of objectStore() */
+    public static PackedObjectStore packedObjects() {
+        return (PackedObjectStore) objectStore().getLayers().get(1);
+    }
+
+    /** Whether one of the alternates of the repository, the layers of objectStore() below its packs, has object ID */
+    public static boolean inAlternates(ObjectId id) {
+        List<ObjectSource> layers = objectStore().getLayers();
+        for (ObjectSource alternate: layers.subList(2, layers.size())) {
+            if (alternate.has(id)) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        try {
-            File blobDir = join(OBJECTS, blobHash.substring(0, 2));
-            if (!blobDir.exists()) {
-                blobDir.mkdir();
+    /** Return the sketch cache of the repository, which rename detection reads and adds to */
+    public static synchronized SketchCache sketchCache() {
+        if (sketchCache == null) {
+            sketchCache = new SketchCache(SKETCHES);
+        }
+        return sketchCache;
+    }
+
+    /** Return the branches of the repository, loose or packed; see Refs */
+    public static synchronized Refs refs() {
+        if (refs == null) {
+            refs = new Refs(new File(".gitlet"));
+        }
+        return refs;
+    }
+
+    /** Return the names of all branches in lexicographical order, including the branches
+     *  like "origin/master" that fetch creates in a subdirectory named after the remote */
+    public static List<String> branchNames() {
+        return refs().names();
+    }
+
+    /** Return the object directories listed in the alternates file of the object directory OBJECTSDIR */
+    public static List<File> readAlternates(File objectsDir) {
+        List<File> dirs = new ArrayList<>();
+        File alternatesFile = join(objectsDir, "info", "alternates");
+        if (alternatesFile.isFile()) {
+            for (String line: readContentsAsString(alternatesFile).split("\n")) {
+                if (!line.isBlank()) {
+                    dirs.add(new File(line.strip()));
+                }
             }
-            blobPath.createNewFile();
-            writeContents(blobPath, readContents(blob));
-        } catch (IOException e) {
-            System.out.println(e.getMessage());
         }
+        return dirs;
+    }
+
+    /** Close the open packs, so that they are looked for again on next use */
+    public static void closePacks() {
+        if (objectStore != null) {
+            objectStore.close();
+        }
+    }
+
+    /** The hash function naming the objects of the repository */
+    public static HashAlgorithm hashAlgorithm() {
+        HashAlgorithm algorithm = hashAlgorithm;
+        if (algorithm == null) {
+            algorithm = HashAlgorithm.of(join(".gitlet"));
+            hashAlgorithm = algorithm;
+        }
+        return algorithm;
+    }
+
+    /** Make ALGORITHM the hash function of the repository, when it is created */
+    public static void setHashAlgorithm(HashAlgorithm algorithm) {
+        algorithm.save(join(".gitlet"));
+        hashAlgorithm = algorithm;
+    }
+
+    /** Return the ID of an object with contents CONTENTS, under the hash function of the repository */
+    public static ObjectId hashObject(byte[] contents) {
+        return hashAlgorithm().hash(contents);
+    }
+
+    /** Whether object HASHID exists, in the repository or in one of its alternates */
+    public static boolean hasObject(ObjectId hashID) {
+        return objectStore().has(hashID);
+    }
+
+    /** Return the contents of object HASHID. Throws IllegalArgumentException if it doesn't exist. */
+    public static byte[] readBlob(ObjectId hashID) {
+        return objectStore().read(hashID);
+    }
+
+    /** Return the commit with sha1 HASHID. Packed commits are deserialized directly from the mapped pack.
+     *  Throws IllegalArgumentException if it doesn't exist. */
+    public static Commit readCommit(ObjectId hashID) {
+        return objectStore().readObject(hashID, Commit.class);
+    }
+
+    /** Save CONTENTS, whose sha1 is BLOBHASH, as a blob object under .gitlet/objects.
+     *  Safe to call from several threads at once. */
+    public static void saveBlob(byte[] contents, ObjectId blobHash) {
+        objectStore().put(blobHash, contents);
     }
 
 
     /** Read the content of a serialized blob object and put it in given file path.
      *  Overwriting that file if it's already there
      */
-    public static void dumpBlob(String filePath, String blobHash) {
-        File blobPath = hashToPath(blobHash);
-        if (!blobPath.exists()) {
-            System.out.println("Unable to load " + blobPath.getPath());
-            return;
-        }
+    public static void dumpBlob(String filePath, ObjectId blobHash) {
         File writtenFile = new File(filePath);
-        writeContents(writtenFile, readContents(blobPath));
-    }
-
-    /** Given the 6-digit ID of a commit.
-     *  If such commit exists, return the file path of its blob; else return null
-     * */
-    public static File commitIDToPath(String commitID) {
-        File dir = join(".gitlet", "objects", commitID.substring(0, 2));
-        if (!dir.exists()) {
-            return null;
+        if (writtenFile.getParentFile() != null) {
+            writtenFile.getParentFile().mkdirs();
         }
-        List<String> blobList = plainFilenamesIn(dir);
-        for (String blobName: blobList) {
-            if (blobName.substring(0, 4).equals(commitID.substring(2))) {
-                return join(dir, blobName);
-            }
+        if (!hasObject(blobHash)) {
+            System.out.println("Unable to load object " + blobHash);
+            return;
+        }
+        try (FileChannel out = FileChannel.open(writtenFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            objectStore().copyTo(blobHash, out);
+        } catch (IOException e) {
+            throw error(e.getMessage());
         }
-        return null;
     }
 
-    /** Given the 6-digit ID of a commit.
-     *  If such commit exists, return the 40-digit SHA1 of its blob; else return null
+    /** Given the 6-digit ID of a commit, in loose objects or packs.
+     *  If such commit exists, return the SHA1 ID of its blob; else return null.
+     *  Blobs starting with the same digits are skipped, and a prefix of several commits is an error.
      * */
-    public static String commitIDToSHA1(String commitID) {
-        File dir = join(".gitlet", "objects", commitID.substring(0, 2));
-        if (!dir.exists()) {
+    public static ObjectId commitIDToSHA1(String commitID) {
+        if (!ObjectId.isHexPrefix(commitID)) {
             return null;
         }
-        List<String> blobList = plainFilenamesIn(dir);
-        for (String blobName: blobList) {
-            if (blobName.substring(0, 4).equals(commitID.substring(2))) {
-                return commitID.substring(0, 2) + blobName;
+        ObjectId commitHash = null;
+        for (ObjectId id: objectStore().findPrefix(commitID)) {
+            try {
+                readCommit(id);
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            if (commitHash != null && !commitHash.equals(id)) {
+                raiseError("Ambiguous commit id; give more digits.");
             }
+            commitHash = id;
         }
-        return null;
+        return commitHash;
     }
 
-    /** Given 40-digit SHA1 of a commit,
-     * return a set of strings containing all its ancestors */
-    public static Set<String> getAncestors(String commitHash) {
-        Set<String> ancestors = new HashSet<>();
+    /** Given SHA1 ID of a commit,
+     * return a set containing the IDs of all its ancestors */
+    public static Set<ObjectId> getAncestors(ObjectId commitHash) {
+        Set<ObjectId> ancestors = new HashSet<>();
         ancestors.add(commitHash);
-        File commitPath = hashToPath(commitHash);
-        Commit commit = readObject(commitPath, Commit.class);
+        Commit commit = readCommit(commitHash);
         if (commit.getMessage().equals("initial commit")) {
             return ancestors;
         }
@@ -126,29 +271,52 @@ public class RepoHelper {
     }
 
 
-    /** Given 40-digit SHA1 of two commits,
-     * find their most recent ancestor (namely the split of history tree) and return its 40-digit SHA1 */
-    public static String findSplit(String commitHash1, String commitHash2) {
+    /** Return the IDs of all the commits and blobs reachable from the commits TIPS,
+     *  each commit being followed by the blobs it introduces */
+    public static Set<ObjectId> reachableObjects(Collection<ObjectId> tips) {
+        Set<ObjectId> reachable = new LinkedHashSet<>();
+        Deque<ObjectId> stack = new ArrayDeque<>(tips);
+        while (!stack.isEmpty()) {
+            ObjectId commitHash = stack.pop();
+            if (!reachable.add(commitHash)) {
+                continue;
+            }
+            Commit commit = readCommit(commitHash);
+            Snapshot.Cursor cursor = commit.getSnapshot().cursor();
+            while (cursor.next()) {
+                reachable.add(cursor.id());
+            }
+            if (commit.getParent() != null) {
+                stack.push(commit.getParent());
+            }
+            if (commit.getSecondParent() != null) {
+                stack.push(commit.getSecondParent());
+            }
+        }
+        return reachable;
+    }
+
+    /** Given SHA1 IDs of two commits,
+     * find their most recent ancestor (namely the split of history tree) and return its SHA1 ID */
+    public static ObjectId findSplit(ObjectId commitHash1, ObjectId commitHash2) {
 
-        File commitPath1 = hashToPath(commitHash1);
-        if (!commitPath1.exists()) {
+        if (!hasObject(commitHash1)) {
             raiseError("Commit with ID:" + commitHash1 + " doesn't exist.");
         }
 
-        File commitPath2 = hashToPath(commitHash2);
-        if (!commitPath1.exists()) {
+        if (!hasObject(commitHash2)) {
             raiseError("Commit with ID:" + commitHash2 + " doesn't exist.");
         }
 
         // stores all the ancestors of the first commit (including itself)
-        Set<String> ancestorsOfCommit1= getAncestors(commitHash1);
+        Set<ObjectId> ancestorsOfCommit1= getAncestors(commitHash1);
 
         // Then iterate through the ancestors of the second commit from most recent to least recent
         // If iterating to a common ancestor of the two commits, stop and return its sha1
         // Using bfs to do this
         Commit commitPointer = null;
-        String currentCommitHash = commitHash2;
-        Deque<String> dq = new ArrayDeque<>();
+        ObjectId currentCommitHash = commitHash2;
+        Deque<ObjectId> dq = new ArrayDeque<>();
         dq.addLast(currentCommitHash);
         while(!dq.isEmpty()) {
             int layerSize = dq.size();
@@ -157,7 +325,7 @@ public class RepoHelper {
                 if (ancestorsOfCommit1.contains(currentCommitHash)) {
                     return currentCommitHash;
                 }
-                commitPointer = readObject(hashToPath(currentCommitHash), Commit.class);
+                commitPointer = readCommit(currentCommitHash);
                 if (commitPointer.getParent() != null) {
                     dq.addLast(commitPointer.getParent());
                 }
@@ -168,4 +336,256 @@ public class RepoHelper {
         }
         return null;
     }
+
+
+    /** Hash the given files of the working directory on the worker pool,
+     *  and return a snapshot mapping each of them to its blob ID */
+    public static Snapshot hashWorkingFiles(List<String> files) {
+        List<ObjectId> hashes = parallelMap(files, file -> hashObject(readContents(new File(file))));
+        Snapshot.Builder builder = Snapshot.builder();
+        for (int i = 0; i < files.size(); ++i) {
+            builder.put(files.get(i), hashes.get(i));
+        }
+        return builder.build();
+    }
+
+    /** The pool of worker threads shared by the parallel operations of gitlet. */
+    private static ExecutorService workers;
+
+    /** Apply TASK to every element of ITEMS on the worker pool,
+     *  and return the results in the same order as ITEMS. */
+    public static <T, R> List<R> parallelMap(List<T> items, Function<T, R> task) {
+        if (items.size() < 2) {
+            return items.stream().map(task).collect(Collectors.toList());
+        }
+        if (workers == null) {
+            workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        List<Future<R>> futures = new ArrayList<>(items.size());
+        for (T item: items) {
+            futures.add(workers.submit(() -> task.apply(item)));
+        }
+        List<R> results = new ArrayList<>(items.size());
+        try {
+            for (Future<R> future: futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            throw error("Interrupted while waiting for workers.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw error(e.getCause().getMessage());
+        }
+        return results;
+    }
+
+    /** Write the files of SNAPSHOT into the working directory, overwriting the versions already there.
+     *  The files outside the cone of a sparse checkout are skipped.
+     *  The files are written by the worker pool, since each of them is an independent copy. */
+    public static void dumpSnapshot(Snapshot snapshot) {
+        List<Map.Entry<String, ObjectId>> files = new ArrayList<>();
+        Snapshot.Cursor cursor = snapshot.cursor();
+        while (cursor.next()) {
+            if (inSparseCone(cursor.path())) {
+                files.add(Map.entry(cursor.path(), cursor.id()));
+            }
+        }
+        parallelMap(files, entry -> {
+            dumpBlob(entry.getKey(), entry.getValue());
+            return null;
+        });
+    }
+
+    /** Share the objects of another repository, stored under SOURCEOBJECTS, with this one.
+     *  Objects are immutable, so the object files are hardlinked into .gitlet/objects when both
+     *  repositories are on the same filesystem. Otherwise, the alternates file points at SOURCEOBJECTS
+     *  and nothing is copied. The alternates of the source are kept in both cases. */
+    public static void shareObjects(File sourceObjects) {
+        List<File> alternateDirs = readAlternates(sourceObjects);
+        try {
+            linkObjects(sourceObjects, OBJECTS);
+        } catch (IOException | UnsupportedOperationException e) {
+            alternateDirs.add(0, sourceObjects.getAbsoluteFile());
+            // Drop the directories created before linking failed; File.delete() keeps the ones that are not empty
+            File[] dirs = OBJECTS.listFiles(File::isDirectory);
+            if (dirs != null) {
+                for (File dir: dirs) {
+                    dir.delete();
+                }
+            }
+        }
+        if (!alternateDirs.isEmpty()) {
+            writeAlternates(alternateDirs);
+        }
+        // Open the store again, with the new alternates and objects
+        closePacks();
+        objectStore = null;
+    }
+
+    /** Add the object or pack directory DIR to the alternates of the repository, and delete the loose objects
+     *  of the repository that DIR has, which are then read from it. Return the number of objects deleted. */
+    public static int addAlternate(File dir) {
+        List<File> alternateDirs = readAlternates(OBJECTS);
+        alternateDirs.add(dir.toPath().toAbsolutePath().normalize().toFile());
+        writeAlternates(alternateDirs);
+        closePacks();
+        objectStore = null;
+
+        AlternateObjectSource alternate = new AlternateObjectSource(dir);
+        int deleted = 0;
+        for (int b = 0; b < 256; ++b) {
+            String prefix = String.format("%02x", b);
+            for (ObjectId id: looseObjects().findPrefix(prefix)) {
+                if (alternate.has(id) && looseObjects().file(id).delete()) {
+                    deleted += 1;
+                }
+            }
+        }
+        alternate.close();
+        return deleted;
+    }
+
+    /** Write DIRS, in order, as the alternates of the repository */
+    private static void writeAlternates(List<File> dirs) {
+        StringBuilder lines = new StringBuilder();
+        for (File dir: dirs) {
+            lines.append(dir.getPath()).append('\n');
+        }
+        ALTERNATES.getParentFile().mkdirs();
+        writeContents(ALTERNATES, lines.toString());
+    }
+
+    /** Hardlink the object files under SOURCE into TARGET, skipping the info directory and temporary files */
+    private static void linkObjects(File source, File target) throws IOException {
+        target.mkdirs();
+        String[] entries = source.list();
+        if (entries == null) {
+            return;
+        }
+        for (String entry: entries) {
+            File file = join(source, entry);
+            if (file.isDirectory()) {
+                if (!entry.equals("info")) {
+                    linkObjects(file, join(target, entry));
+                }
+            } else if (!entry.startsWith("tmp-") && !join(target, entry).exists()) {
+                Files.createLink(join(target, entry).toPath(), file.toPath());
+            }
+        }
+    }
+
+    /** Expand the paths given to a command into the relative paths of plain files in
+     *  the working directory, sorted in lexicographic order.
+     *  Each path may be a plain file, a directory (expanded recursively) or a glob pattern
+     *  such as "*.txt" or "src/**".
+     *  Return null if some path matches no file at all. */
+    public static List<String> expandPaths(String... paths) {
+        TreeSet<String> files = new TreeSet<>();
+        List<String> workingFiles = null;
+        for (String path: paths) {
+            File file = new File(path);
+            if (file.isFile()) {
+                files.add(Paths.get(path).normalize().toString());
+            } else if (file.isDirectory()) {
+                List<String> found = walkFiles(Paths.get(path).normalize().toString());
+                if (found.isEmpty()) {
+                    return null;
+                }
+                files.addAll(found);
+            } else if (isGlob(path)) {
+                // Only walk the working directory once, however many globs are given
+                if (workingFiles == null) {
+                    workingFiles = workingFiles();
+                }
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + path);
+                boolean matched = false;
+                for (String workingFile: workingFiles) {
+                    if (matcher.matches(Paths.get(workingFile))) {
+                        files.add(workingFile);
+                        matched = true;
+                    }
+                }
+                if (!matched) {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
+    /** Whether PATH contains any of the special characters of glob patterns */
+    private static boolean isGlob(String path) {
+        for (char c: "*?[{".toCharArray()) {
+            if (path.indexOf(c) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the compiled ignore patterns of the working directory */
+    public static IgnoreMatcher ignoreMatcher() {
+        if (ignoreMatcher == null) {
+            ignoreMatcher = IgnoreMatcher.load(new File("."));
+        }
+        return ignoreMatcher;
+    }
+
+    /** Forget the compiled ignore patterns, so that they are loaded again on next use */
+    public static void reloadIgnoreMatcher() {
+        ignoreMatcher = null;
+    }
+
+    /** Return the relative paths of all the plain files in the working tree that are not ignored,
+     *  sorted in Snapshot.PATH_ORDER. Ignored files are not even stat'ed. */
+    public static List<String> workingFiles() {
+        return walkFiles("");
+    }
+
+    /** Return the relative paths of all plain files under the relative directory DIR that are not ignored.
+     *  Ignored directories are pruned without being listed. */
+    public static List<String> walkFiles(String dir) {
+        return new TreeWalker(ignoreMatcher(), sparseCheckout()).walk(dir);
+    }
+
+    /** Return the cone of the sparse checkout, or null if the checkout is not sparse */
+    public static synchronized SparseCheckout sparseCheckout() {
+        if (!sparseCheckoutLoaded) {
+            sparseCheckout = SparseCheckout.load();
+            sparseCheckoutLoaded = true;
+        }
+        return sparseCheckout;
+    }
+
+    /** Forget the loaded cone of the sparse checkout, after its file changed */
+    public static synchronized void reloadSparseCheckout() {
+        sparseCheckoutLoaded = false;
+    }
+
+    /** Whether the file at relative path PATH is written to the working directory,
+     *  that is, whether the checkout is not sparse or PATH is in its cone */
+    public static boolean inSparseCone(String path) {
+        SparseCheckout sparse = sparseCheckout();
+        return sparse == null || sparse.includes(path);
+    }
+
+    /** Delete the working file at relative path PATH if it exists,
+     *  then the directories containing it that become empty. */
+    public static void deleteWorkingFile(String path) {
+        File file = new File(path);
+        file.delete();
+        File dir = file.getParentFile();
+        // File.delete() refuses to delete a directory that is not empty
+        while (dir != null && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
 }
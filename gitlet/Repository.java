@@ -2,7 +2,12 @@ package gitlet;
 
 import java.io.File;
 import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
+import java.io.InputStream;
 import java.util.*;
 import java.io.IOException;
 import static gitlet.Utils.*;
@@ -22,12 +27,14 @@ public class Repository {
     /** A dictionary that stores all the frequently used paths as File objects */
     public static final Map<String, File> pathDict = new HashMap<>();
 
-    /** The file under .gitlet/refs/heads that stores sha1 of the current commit*/
+    /** The path under .gitlet/branches of the current branch, as recorded in HEAD; the branch itself
+     *  may be packed, see Refs. Like the other pieces of repository state below, it is only read from disk
+     *  the first time it is needed, through its accessor.  */
     private File head;
 
     /** The commit that "head" points to */
     private Commit headCommit;
-    private String headCommitHash;
+    private ObjectId headCommitHash;
     /** index records all the files in the staging area */
     private Staging index;
 
@@ -43,51 +50,84 @@ public class Repository {
         pathDict.put("HEAD", join(GITLET_DIR, "HEAD"));
         pathDict.put("index", join(GITLET_DIR, "index"));
         pathDict.put("log", join(GITLET_DIR, "log"));
+        pathDict.put("remotes", join(GITLET_DIR, "remotes"));
+    }
 
-        /** Set up the current working space*/
-        if (!GITLET_DIR.exists()) {
-            head = null;
-            headCommitHash = null;
-            headCommit = null;
-            index = null;
-        } else {
+    /** The branch file that HEAD points to */
+    private File head() {
+        if (head == null) {
             head = new File(readContentsAsString(pathDict.get("HEAD")));
-            headCommitHash = readContentsAsString(head);
-            headCommit = readObject(hashToPath(headCommitHash), Commit.class);
-            index = readObject(pathDict.get("index"), Staging.class);
         }
+        return head;
+    }
+
+    /** The name of the current branch, like "master" or "origin/master" */
+    private String headBranchName() {
+        String branches = join(".gitlet", "branches").getPath();
+        return head().getPath().substring(branches.length() + 1).replace(File.separatorChar, '/');
+    }
+
+    /** The sha1 of the current commit */
+    private ObjectId headCommitHash() {
+        if (headCommitHash == null) {
+            headCommitHash = refs().read(headBranchName());
+        }
+        return headCommitHash;
     }
 
-    /** If the repo hasn't been initialized, use init to initialize it by establishing the .gitlet directory */
-    public void init() {
+    /** The current commit */
+    private Commit headCommit() {
+        if (headCommit == null) {
+            headCommit = readCommit(headCommitHash());
+        }
+        return headCommit;
+    }
+
+    /** The staging area */
+    private Staging index() {
+        if (index == null) {
+            index = Staging.load();
+        }
+        return index;
+    }
+
+    /** If the repo hasn't been initialized, use init to initialize it by establishing the .gitlet directory.
+     *  Its objects are named with the hash function HASHNAME, or SHA-1 if it is null; see HashAlgorithm. */
+    public void init(String hashName) {
 
         checkInitializeCondition("init");
 
+        HashAlgorithm algorithm = hashName == null ? HashAlgorithm.DEFAULT : HashAlgorithm.forName(hashName);
+        if (algorithm == null) {
+            raiseError("Unknown hash algorithm; use sha1, sha256 or fast.");
+        }
+
         try {
             // establishing the directory stucture of .gitlet
             pathDict.get("gitlet").mkdir();
             pathDict.get("objects").mkdir();
             pathDict.get("branches").mkdir();
+            saveFormat(pathDict.get("gitlet"));
             pathDict.get("HEAD").createNewFile();
             pathDict.get("index").createNewFile();
             pathDict.get("log").createNewFile();
+            setHashAlgorithm(algorithm);
 
             // Initialize HEAD file
             head = new File(join(".gitlet", "branches", "master").getPath());
             writeContents(pathDict.get("HEAD"), head.getPath());
 
             // Constructing initial commit
-            headCommit = new Commit("initial commit", "null", null, null);
+            headCommit = new Commit("initial commit", null, Snapshot.EMPTY, null);
             headCommit.saveCommit();
 
             // Constructing master branch
-            File masterBranch = join(pathDict.get("branches"), "master");
             headCommitHash = headCommit.getHash();
-            writeContents(masterBranch, headCommitHash);
+            refs().update("master", headCommitHash, "commit (initial): initial commit");
 
             // Constructing an empty index file
             index = new Staging();
-            writeObject(pathDict.get("index"), index);
+            index.save();
 
             // Record the initial commit to log
             writeContents(pathDict.get("log"), headCommit.getLogMessage());
@@ -97,29 +137,52 @@ public class Repository {
         }
     }
 
-    /** add a file to the staging area ( the staged files are recorded in .gitlet/index )*/
-    public void add(String filePath) {
+    /** Add files to the staging area ( the staged files are recorded in .gitlet/index ).
+     *  Each path may name a plain file, a directory (all files beneath it are added)
+     *  or a glob pattern. The files are hashed and saved as blobs by a pool of workers,
+     *  and the index is written back only once at the end.
+     * */
+    public void add(String... filePaths) {
 
         checkInitializeCondition("add");
 
-        File addedFile = new File(filePath);
-        if (!addedFile.exists()) {
+        List<String> addedFiles = expandPaths(filePaths);
+        if (addedFiles == null) {
             raiseError("File does not exist.");
         }
-        String blobHash = sha1(readContents(addedFile));
-
 
-        // If the current working version of the file is identical to the version in the current commit,
-        // do not stage it to be added, and remove it from the staging area if it is already there
-        if (headCommit.tracked(filePath) && headCommit.getBlobHash(filePath).equals(blobHash)) {
-            index.cancelAdd(filePath);
-            index.save();
-            return;
+        // Hash every file (and save the blobs that are not identical to the head version) in parallel.
+        // A file the watcher saw unchanged since it was saved as a blob is skipped, and staged under the ID
+        // from its cache. Any other file is read, and saved under the hash of the bytes read, never under
+        // a cached ID: the file may have been written since the watcher last looked at it.
+        // The head commit is loaded before the workers start, since the accessor is not thread-safe.
+        Commit headCommit = headCommit();
+        Snapshot knownHashes = FsMonitor.cachedSnapshot();
+        List<ObjectId> blobHashes = parallelMap(addedFiles, filePath -> {
+            ObjectId knownHash = knownHashes == null ? null : knownHashes.get(filePath);
+            if (knownHash != null && (knownHash.equals(headCommit.getBlobHash(filePath)) || hasObject(knownHash))) {
+                return knownHash;
+            }
+            byte[] contents = readContents(new File(filePath));
+            ObjectId blobHash = hashObject(contents);
+            if (!blobHash.equals(headCommit.getBlobHash(filePath))) {
+                saveBlob(contents, blobHash);
+            }
+            return blobHash;
+        });
+
+        for (int i = 0; i < addedFiles.size(); ++i) {
+            String filePath = addedFiles.get(i);
+            ObjectId blobHash = blobHashes.get(i);
+            // If the current working version of the file is identical to the version in the current commit,
+            // do not stage it to be added, and remove it from the staging area if it is already there
+            if (headCommit().tracked(filePath) && headCommit().getBlobHash(filePath).equals(blobHash)) {
+                index().cancelAdd(filePath);
+            } else {
+                index().add(filePath, blobHash);
+            }
         }
-
-        saveBlob(addedFile, blobHash);
-        index.add(addedFile.getPath(), blobHash);
-        index.save();
+        index().save();
     }
 
     /** Unstage the file if it is currently staged for addition.
@@ -130,8 +193,8 @@ public class Repository {
         checkInitializeCondition("rm");
 
         File removedFile = new File(filePath);
-        boolean stagedForAddition = index.stagedForAddition(filePath);
-        boolean trackedByCurrentCommit = headCommit.tracked(filePath);
+        boolean stagedForAddition = index().stagedForAddition(filePath);
+        boolean trackedByCurrentCommit = headCommit().tracked(filePath);
 
 
         if ((!stagedForAddition) && (!trackedByCurrentCommit)) {
@@ -140,68 +203,76 @@ public class Repository {
 
         // Unstage the file if it is currently staged for addition.
         if (stagedForAddition) {
-            index.cancelAdd(filePath);
+            index().cancelAdd(filePath);
          }
 
         // If the file is tracked in the current commit, stage it for removal
         if (trackedByCurrentCommit) {
-            index.remove(filePath);
-            // Ensure that the file has been deleted
+            index().remove(filePath);
+            // Ensure that the file (and the directories it leaves empty) has been deleted
             if (removedFile.exists()) {
-                removedFile.delete();
+                deleteWorkingFile(filePath);
             }
         }
-        index.save();
+        index().save();
     }
 
 
     /** Saves a snapshot of tracked files in the current commit and staging area
      * so they can be restored at a later time, creating a new commit.
      * */
-    public void commit(String message, String secondParent) {
+    public void commit(String message, ObjectId secondParent) {
 
         checkInitializeCondition("commit");
 
         // an empty staging area leads to a failure case
-        if (index.stageSize() == 0) {
+        if (index().stageSize() == 0) {
             raiseError("No changes added to the commit.");
         }
 
         // Create a new commit that takes the current commit(represented by its sha1) as parent
-        // Its blobmap is initialized with headCommit.blobMap
-        Commit newCommit = new Commit(message, headCommitHash, headCommit.snapshot, secondParent);
+        Commit newCommit = new Commit(message, headCommitHash(), stagedSnapshot(), secondParent);
+        advanceHead(newCommit, (secondParent == null ? "commit: " : "commit (merge): ") + message);
 
-        // Adding to the new commit the files for addition in the staging area
-        for (Map.Entry<String, String> entry:index.additionIndex.entrySet()){
-            newCommit.updateFileVersion(entry.getKey(), entry.getValue());
-        }
-
-        // Remove the files staged for removal from tracking
-        for (String removedFile: index.removalIndex) {
-            newCommit.removeFileFromTracking(removedFile);
-        }
+        // Empty the staging area
+        index().clear();
+        index().save();
+    }
 
-        // save the new commit
+    /** Save NEWCOMMIT, move the current branch to it, recording REASON in its reflog,
+     *  and record it in the global log. */
+    private void advanceHead(Commit newCommit, String reason) {
         newCommit.saveCommit();
 
         // Update the head of current branch
-        String newCommitHash = newCommit.getHash();
-        writeContents(head, newCommitHash);
-
-        // Empty the staging area
-        index.clear();
-        index.save();
+        refs().update(headBranchName(), newCommit.getHash(), reason);
 
         // Record the commit information to the global log
         String log_message = readContentsAsString(pathDict.get("log"));
         writeContents(pathDict.get("log"), newCommit.getLogMessage() + "\n" + log_message);
     }
 
+    /** The snapshot of head commit with the changes of the staging area applied */
+    private Snapshot stagedSnapshot() {
+        Snapshot.Builder newSnapshot = headCommit().getSnapshot().edit();
+
+        // Adding to the new snapshot the files for addition in the staging area
+        for (Map.Entry<String, ObjectId> entry:index().additionIndex.entrySet()){
+            newSnapshot.put(entry.getKey(), entry.getValue());
+        }
+
+        // Remove the files staged for removal from tracking
+        for (String removedFile: index().removalIndex) {
+            newSnapshot.remove(removedFile);
+        }
+        return newSnapshot.build();
+    }
+
     /** Printing the information about each commit backwards along the commit tree until the initial commit */
     public void log() {
         checkInitializeCondition("log");
-        Commit commitPointer = headCommit;
-        String commitHash = headCommitHash;
+        Commit commitPointer = headCommit();
+        ObjectId commitHash = headCommitHash();
         while(true) {
             // Print the information
             System.out.println(commitPointer.getLogMessage());
@@ -213,9 +284,53 @@ public class Repository {
 
             // Shift to parent commit
             commitHash = commitPointer.getParent();
-            commitPointer = readObject(hashToPath(commitHash), Commit.class);
+            commitPointer = readCommit(commitHash);
+
+        }
+    }
+
+    /** Print the information about the commits along the first-parent history of head commit that changed
+     *  PATH, a file or a directory, against their first parent. The commits covered by the commit graph are
+     *  skipped without being read when their changed-path Bloom filter rules PATH out. */
+    public void log(String path) {
+        checkInitializeCondition("log");
+        path = path.replace(File.separatorChar, '/');
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+
+        CommitGraph graph = CommitGraph.load();
+        ObjectId commitHash = headCommitHash();
+        while (commitHash != null) {
+            int i = graph == null ? -1 : graph.indexOf(commitHash);
+            if (i >= 0 && !graph.mayHaveChanged(i, path)) {
+                int parent = graph.parentAt(i, 0);
+                commitHash = parent < 0 ? null : graph.idAt(parent);
+                continue;
+            }
+            Commit commit = readCommit(commitHash);
+            Snapshot parentSnapshot = commit.getParent() == null
+                    ? Snapshot.EMPTY : readCommit(commit.getParent()).getSnapshot();
+            if (CommitGraph.touches(parentSnapshot, commit.getSnapshot(), path)) {
+                System.out.println(commit.getLogMessage());
+            }
+            commitHash = commit.getParent();
+        }
+    }
+
+    /** Write the commit graph of the commits reachable from the branches; see CommitGraph. */
+    public void commitGraph() {
+        checkInitializeCondition("commit-graph");
+        CommitGraph.write(branchTips());
+    }
 
+    /** Return the commits the branches point to. */
+    private List<ObjectId> branchTips() {
+        List<ObjectId> tips = new ArrayList<>();
+        for (String branchName: branchNames()) {
+            tips.add(refs().read(branchName));
         }
+        return tips;
     }
 
     public void globalLog() {
@@ -267,9 +382,8 @@ public class Repository {
 
         // Print branches
         System.out.println("=== Branches ===");
-        List<String> branches = plainFilenamesIn(pathDict.get("branches"));
-        for (String filename: branches) {
-            if (head.getName().equals(filename)) {
+        for (String filename: branchNames()) {
+            if (headBranchName().equals(filename)) {
                 System.out.println("*" + filename);
             } else {
                 System.out.println(filename);
@@ -277,11 +391,11 @@ public class Repository {
         }
         System.out.print("\n");
 
-        // Collect all the files in the current working place.
-        // Ignore the functional files including "Makefile",".gitignore", "README.md", "pom.xml"
-        Set<String> currentFiles = new HashSet<String>(plainFilenamesIn(CWD));
-        List<String> ignoredFiles = Arrays.asList("Makefile", ".gitignore", "README.md", "pom.xml", ".DS_Store");
-        currentFiles.removeAll(ignoredFiles);
+        // Collect all the files in the current working place, and hash them into a snapshot of the working directory.
+        // The files matched by .gitletignore or outside the cone of a sparse checkout are skipped without being read,
+        // and if the watcher is running,
+        // only the files changed since the last status are hashed again.
+        Snapshot workingSnapshot = FsMonitor.workingSnapshot();
 
         // Then catalogue the collected files into four disjoint sets
         TreeSet<String> addedFiles = new TreeSet<>();
@@ -289,42 +403,43 @@ public class Repository {
         TreeSet<String> unstagedFiles = new TreeSet<>();
         TreeSet<String> untrackedFiles = new TreeSet<>();
 
-        for (String file: currentFiles) {
-            String fileHash = sha1(readContents(new File(file)));
-            if (index.stagedForAddition(file)) {
+        // Walk the files tracked by head commit and the files in the working directory side by side
+        Snapshot.join((file, ids) -> {
+            ObjectId headHash = ids[0];
+            ObjectId fileHash = ids[1];
+            if (fileHash == null) {
+                //  Tracked in the current commit and deleted from the working directory, but not staged for removal.
+                //  Files outside the cone of a sparse checkout are never in the working directory.
+                if (!index().stagedForRemoval(file) && inSparseCone(file)) {
+                    unstagedFiles.add(file + " (deleted)");
+                }
+            } else if (index().stagedForAddition(file)) {
                 // If recorded in the staging area for addition
-                String addedHash = index.getBlobHash(file);
+                ObjectId addedHash = index().getBlobHash(file);
                 addedFiles.add(file);
                 if (!addedHash.equals(fileHash)) {
                     // Staged for addition, but with different contents than in the working directory;
                     unstagedFiles.add(file + " (modified)");
                 }
-            } else if (headCommit.tracked(file)) {
-                // Tracked in the current commit, czshanged in the working directory, but not staged
-                if (!headCommit.getBlobHash(file).equals(fileHash)) {
+            } else if (headHash != null) {
+                // Tracked in the current commit, changed in the working directory, but not staged
+                if (!headHash.equals(fileHash)) {
                     unstagedFiles.add(file + " (modified)");
                 }
             } else { // neither staged for addition nor be tracked by HEAD commit
                 untrackedFiles.add(file);
             }
-        }
-
-        //  Tracked in the current commit and deleted from the working directory, but not staged for removal
-        for (String file: headCommit.getTrackedFiles()) {
-            if ((!currentFiles.contains(file)) && (!index.stagedForRemoval(file))) {
-                unstagedFiles.add(file + " (deleted)");
-            }
-        }
+        }, headCommit().getSnapshot(), workingSnapshot);
 
         // Staged for addition, but deleted in the working directory
-        for (String file: index.additionIndex.keySet()) {
-            if (!currentFiles.contains(file)) {
+        for (String file: index().additionIndex.keySet()) {
+            if (!workingSnapshot.contains(file) && inSparseCone(file)) {
                 unstagedFiles.add(file + " (deleted)");
             }
         }
 
         // Consider the files staged for removal
-        removedFiles.addAll(index.removalIndex);
+        removedFiles.addAll(index().removalIndex);
 
         // Print the contents of the four sets one after another.
         // Since the TreeSet automatically sorts its elements, they are printed in lexicographical order.
@@ -357,12 +472,12 @@ public class Repository {
      * and puts it in the working directory */
     public void restoreFile(String fileName) {
         checkInitializeCondition("checkout");
-        if (!headCommit.tracked(fileName)) {
+        if (!headCommit().tracked(fileName)) {
             raiseError("File does not exist in that commit.");
         }
-        dumpBlob(fileName, headCommit.getBlobHash(fileName));
-        index.cancelAdd(fileName);
-        index.save();
+        dumpBlob(fileName, headCommit().getBlobHash(fileName));
+        index().cancelAdd(fileName);
+        index().save();
     }
 
     /** Takes the version of the file as it exists in the commit with the given id,
@@ -371,19 +486,19 @@ public class Repository {
     public void restoreFileGivenCommit(String fileName, String commitID) {
         checkInitializeCondition("checkout");
 
-        File targetCommitPath = commitIDToPath(commitID);
-        if (targetCommitPath == null) {
+        ObjectId targetCommitHash = commitIDToSHA1(commitID);
+        if (targetCommitHash == null) {
             raiseError("No commit with that id exists.");
         }
 
-        Commit targetCommit = readObject(targetCommitPath, Commit.class);
+        Commit targetCommit = readCommit(targetCommitHash);
         if (!targetCommit.tracked(fileName)) {
             raiseError("File does not exist in that commit.");
         }
 
         dumpBlob(fileName, targetCommit.getBlobHash(fileName));
-        index.cancelAdd(fileName);
-        index.save();
+        index().cancelAdd(fileName);
+        index().save();
     }
 
     /** Takes all files in the commit at the head of the given branch, and puts them in the working directory,
@@ -392,74 +507,77 @@ public class Repository {
     public void checkoutBranch(String branchName) {
         checkInitializeCondition("checkout");
 
-        if (head.getName().equals(branchName)) {
+        if (headBranchName().equals(branchName)) {
             raiseError("No need to checkout the current branch.");
         }
 
-        File targetBranch = join(".gitlet", "branches", branchName);
-        if (!targetBranch.exists()) {
+        ObjectId targetCommitHash = refs().read(branchName);
+        if (targetCommitHash == null) {
             raiseError("No such branch exists.");
         }
 
-        File targetCommitPath = hashToPath(readContentsAsString(targetBranch));
-        Commit targetCommit = readObject(targetCommitPath, Commit.class); // The commit to restore.
+        Commit targetCommit = readCommit(targetCommitHash); // The commit to restore.
+        checkoutCommit(targetCommit);
 
-        // Clean unneeded files in the working dir
-        List<String> currentFiles = plainFilenamesIn(CWD);
-        for (String fileName: currentFiles) {
-            boolean trackedByHead = headCommit.tracked(fileName);
-            boolean trackedByTarget = targetCommit.tracked(fileName);
+        // Move HEAD to the given branch
+        writeContents(pathDict.get("HEAD"), join(".gitlet", "branches", branchName).getPath());
+
+        // empty the staging area
+        index().clear();
+        index().save();
+    }
+
+
+    /** Replace the files tracked by head commit in the working directory with the files tracked by TARGETCOMMIT.
+     *  Fails before touching any file if an untracked file would be overwritten.
+     *  Files outside the cone of a sparse checkout are left alone. */
+    private void checkoutCommit(Commit targetCommit) {
+        // Walk the head and target snapshots side by side to find the files to delete
+        List<String> deletedFiles = new ArrayList<>();
+        Snapshot.join((fileName, ids) -> {
+            if (!inSparseCone(fileName)) {
+                return;
+            }
+            boolean trackedByHead = ids[0] != null;
+            boolean trackedByTarget = ids[1] != null;
             if (!trackedByHead) {
-                if (trackedByTarget) {
+                if (trackedByTarget && !ignoreMatcher().isIgnored(fileName) && new File(fileName).isFile()) {
                     raiseError("There is an untracked file in the way; delete it, or add and commit it first.");
                 }
-            } else {
-                if (!trackedByTarget) {
-                    File thisFile = join(CWD, fileName);
-                    thisFile.delete();
-                }
+            } else if (!trackedByTarget) {
+                deletedFiles.add(fileName);
             }
-        }
+        }, headCommit().getSnapshot(), targetCommit.getSnapshot());
 
-        // Dump all the content tracked by target commit
-        for (String fileName: targetCommit.getTrackedFiles()) {
-            dumpBlob(fileName, targetCommit.getBlobHash(fileName));
+        // Clean unneeded files in the working dir
+        for (String fileName: deletedFiles) {
+            deleteWorkingFile(fileName);
         }
 
-        // Move HEAD to the given branch
-        writeContents(pathDict.get("HEAD"), targetBranch.getPath());
-
-        // empty the staging area
-        index.clear();
-        index.save();
+        // Dump all the content tracked by target commit
+        dumpSnapshot(targetCommit.getSnapshot());
     }
 
-
     /** Creates a new branch with the given name, and points it at the current head commit. */
     public void branch(String branchName) {
         checkInitializeCondition("branch");
 
-        File newBranch = join(pathDict.get("branches"), branchName);
-        if (newBranch.exists()) {
+        if (!refs().create(branchName, headCommitHash(), "branch: Created from " + headBranchName())) {
             raiseError("A branch with that name already exists.");
         }
-        writeContents(newBranch, headCommitHash);
     }
 
     /** Deletes the branch with the given name. */
     public void rmBranch(String branchName) {
         checkInitializeCondition("rm-branch");
 
-        if (head.getName().equals(branchName)) {
+        if (headBranchName().equals(branchName)) {
             raiseError("Cannot remove the current branch.");
         }
 
-        File removedBranch = join(pathDict.get("branches"), branchName);
-        if (!removedBranch.exists()) {
+        if (!refs().delete(branchName)) {
             raiseError("A branch with that name does not exist.");
         }
-
-        removedBranch.delete();
     }
 
     /** Checks out all the files tracked by the given commit.
@@ -469,66 +587,44 @@ public class Repository {
     public void reset(String commitID) {
         checkInitializeCondition("reset");
 
-        File targetCommitPath = commitIDToPath(commitID);
-        if (targetCommitPath == null) {
+        ObjectId targetCommitHash = commitIDToSHA1(commitID);
+        if (targetCommitHash == null) {
             raiseError("No commit with that id exists.");
         }
 
-        Commit targetCommit = readObject(targetCommitPath, Commit.class); // The commit to reset
-
-        // Clean unneeded files in the working dir
-        List<String> currentFiles = plainFilenamesIn(CWD);
-        for (String fileName: currentFiles) {
-            boolean trackedByHead = headCommit.tracked(fileName);
-            boolean trackedByTarget = targetCommit.tracked(fileName);
-            if (!trackedByHead) {
-                if (trackedByTarget) {
-                    raiseError("There is an untracked file in the way; delete it, or add and commit it first.");
-                }
-            } else {
-                if (!trackedByTarget) {
-                    File thisFile = join(CWD, fileName);
-                    thisFile.delete();
-                }
-            }
-        }
-
-        // Dump all the content tracked by target commit
-        for (String fileName: targetCommit.getTrackedFiles()) {
-            dumpBlob(fileName, targetCommit.getBlobHash(fileName));
-        }
+        Commit targetCommit = readCommit(targetCommitHash); // The commit to reset
+        checkoutCommit(targetCommit);
 
         // Move the current branch's head to target commit
-        writeContents(head, commitIDToSHA1(commitID));
+        refs().update(headBranchName(), targetCommitHash, "reset: moving to " + targetCommitHash);
 
         // empty the staging area
-        index.clear();
-        index.save();
+        index().clear();
+        index().save();
     }
 
 
-    /**  Merges files from the given branch into the current branch. */
+    /**  Merges files from the given branch into the current branch.
+     *  The merged snapshot is computed in memory by MergeEngine, then checked out and committed. */
     public void merge(String branchName) {
         checkInitializeCondition("merge");
 
         // First deal with failure cases
-        if (index.stageSize() > 0) {
+        if (index().stageSize() > 0) {
             raiseError("You have uncommitted changes.");
         }
-        if (head.getName().equals(branchName)) {
+        if (headBranchName().equals(branchName)) {
             raiseError("Cannot merge a branch with itself.");
         }
-        File targetBranch = join(".gitlet", "branches", branchName);
-        if (!targetBranch.exists()) {
+        ObjectId targetCommitHash = refs().read(branchName);
+        if (targetCommitHash == null) {
             raiseError("No such branch exists.");
         }
-
-        String targetCommitHash = readContentsAsString(targetBranch);
-        Commit targetCommit = readObject(hashToPath(targetCommitHash), Commit.class);
+        Commit targetCommit = readCommit(targetCommitHash);
 
         // Search for the split commit (latest common ancester) of current commit and given commit
-        String splitCommitHash = findSplit(headCommitHash, targetCommitHash);
-        Commit splitCommit = readObject(hashToPath(splitCommitHash), Commit.class);
+        ObjectId splitCommitHash = findSplit(headCommitHash(), targetCommitHash);
+        Commit splitCommit = readCommit(splitCommitHash);
 
         // Cases when givenBranch and head lie on the same line
         if (splitCommitHash.equals(targetCommitHash)) {
@@ -536,90 +632,574 @@ public class Repository {
             return;
         }
 
-        if (splitCommitHash.equals(headCommitHash)) {
+        if (splitCommitHash.equals(headCommitHash())) {
             System.out.println("Current branch fast-forwarded.");
             checkoutBranch(branchName);
             return;
         }
 
-        // Search for untracked dangerous files
-        List<String> currentFiles = plainFilenamesIn(CWD);
-        for (String fileName: currentFiles) {
-            boolean trackedByHead = headCommit.tracked(fileName);
-            boolean trackedByTarget = targetCommit.tracked(fileName);
-            boolean trackedBySplit = splitCommit.tracked(fileName);
-            if (!trackedByHead && (trackedByTarget || trackedBySplit)) {
+        Snapshot headSnapshot = headCommit().getSnapshot();
+        MergeEngine.Result result = new MergeEngine(objectStore(), hashAlgorithm(), sketchCache())
+                .merge(splitCommit.getSnapshot(), headSnapshot, targetCommit.getSnapshot());
+        if (result.snapshot.equals(headSnapshot)) {
+            return;
+        }
+
+        updateWorkingTree(headSnapshot, result.snapshot);
+        String message = "Merged " + branchName + " into " + headBranchName() + ".";
+        advanceHead(new Commit(message, headCommitHash(), result.snapshot, targetCommitHash),
+                "commit (merge): " + message);
+        if (result.hasConflict()) {
+            System.out.println("Encountered a merge conflict.");
+        }
+    }
+
+    /** Applies the changes introduced by the given commit on top of the current commit, as a new commit
+     *  with the same message. The changes are merged in memory by MergeEngine, with the parent of the given
+     *  commit as the base, so they apply even if the files moved or changed since. */
+    public void cherryPick(String commitID) {
+        checkInitializeCondition("cherry-pick");
+
+        if (index().stageSize() > 0) {
+            raiseError("You have uncommitted changes.");
+        }
+        ObjectId pickedCommitHash = commitIDToSHA1(commitID);
+        if (pickedCommitHash == null) {
+            raiseError("No commit with that id exists.");
+        }
+        Commit pickedCommit = readCommit(pickedCommitHash);
+        if (pickedCommit.getParent() == null) {
+            raiseError("Cannot cherry-pick the initial commit.");
+        }
+
+        // A merge commit is compared with its first parent, the branch it was made on
+        Snapshot headSnapshot = headCommit().getSnapshot();
+        MergeEngine.Result result = new MergeEngine(objectStore(), hashAlgorithm(), sketchCache()).merge(
+                readCommit(pickedCommit.getParent()).getSnapshot(), headSnapshot, pickedCommit.getSnapshot());
+        if (result.snapshot.equals(headSnapshot)) {
+            raiseError("No changes to cherry-pick.");
+        }
+
+        updateWorkingTree(headSnapshot, result.snapshot);
+        advanceHead(new Commit(pickedCommit.getMessage(), headCommitHash(), result.snapshot, null),
+                "cherry-pick: " + pickedCommit.getMessage());
+        if (result.hasConflict()) {
+            System.out.println("Encountered a merge conflict.");
+        }
+    }
+
+    /** Writes the files of the given commit, or of the head of the given branch, into a tar archive,
+     *  or a zip archive if the name of the archive ends with .zip. The working directory is left alone. */
+    public void archive(String commitID, String archivePath) {
+        checkInitializeCondition("archive");
+
+        ObjectId commitHash = refs().exists(commitID) ? refs().read(commitID) : commitIDToSHA1(commitID);
+        if (commitHash == null) {
+            raiseError("No commit with that id exists.");
+        }
+        if (!archivePath.endsWith(".tar") && !archivePath.endsWith(".zip")) {
+            raiseError("The archive must be named .tar or .zip.");
+        }
+        new Archive(objectStore(), readCommit(commitHash)).write(new File(archivePath));
+    }
+
+    /** Imports the history of a fast-import stream, read from the given file or from the standard input
+     *  if there is none, into the repository. The objects go straight into packs; the working directory and
+     *  the staging area are left alone, even if the current branch moves. See FastImport. */
+    public void fastImport(String streamPath) {
+        checkInitializeCondition("fast-import");
+
+        try (InputStream in = streamPath == null ? System.in : new FileInputStream(streamPath)) {
+            new FastImport(in).run();
+        } catch (FileNotFoundException e) {
+            raiseError("No such file exists.");
+        } catch (IOException e) {
+            throw error(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            raiseError(e.getMessage());
+        }
+    }
+
+    /** Writes the history of the given branches, or of all branches if none is given, to the standard output
+     *  as a fast-import stream. See FastExport. */
+    public void fastExport(String... branchNames) {
+        checkInitializeCondition("fast-export");
+
+        List<String> exported = branchNames.length == 0 ? branchNames() : Arrays.asList(branchNames);
+        for (String branchName: exported) {
+            if (!refs().exists(branchName)) {
+                raiseError("No such branch exists.");
+            }
+        }
+        new FastExport(new FileOutputStream(FileDescriptor.out)).run(exported);
+    }
+
+    /** Update the working directory from the files of FROM, the snapshot of the head commit, to the files of TO,
+     *  writing and deleting only the files that differ. Fails before touching any file if an untracked file
+     *  would be overwritten. Files outside the cone of a sparse checkout are left alone. */
+    private void updateWorkingTree(Snapshot from, Snapshot to) {
+        List<Map.Entry<String, ObjectId>> writtenFiles = new ArrayList<>();
+        List<String> deletedFiles = new ArrayList<>();
+        Snapshot.join((fileName, ids) -> {
+            if (!inSparseCone(fileName) || Objects.equals(ids[0], ids[1])) {
+                return;
+            }
+            if (ids[0] == null && !ignoreMatcher().isIgnored(fileName) && new File(fileName).isFile()) {
                 raiseError("There is an untracked file in the way; delete it, or add and commit it first.");
             }
+            if (ids[1] == null) {
+                deletedFiles.add(fileName);
+            } else {
+                writtenFiles.add(Map.entry(fileName, ids[1]));
+            }
+        }, from, to);
+
+        for (String fileName: deletedFiles) {
+            if (new File(fileName).exists()) {
+                deleteWorkingFile(fileName);
+            }
         }
+        parallelMap(writtenFiles, entry -> {
+            dumpBlob(entry.getKey(), entry.getValue());
+            return null;
+        });
+    }
 
-        // Files not present in split commit, not present in current branch but present in given branch
-        Set<String> filesTrackedByTarget = targetCommit.getTrackedFiles();
-        for (String fileName: filesTrackedByTarget) {
-            if (!splitCommit.tracked(fileName) && !headCommit.tracked(fileName)) {
-                String blobhash = targetCommit.getBlobHash(fileName);
-                dumpBlob(fileName, blobhash); // checkout the file
-                index.add(fileName, blobhash); // stage for addition
+    /** Pack all the objects of the repository reachable from the branches, their reflogs and the staging area
+     *  into a single pack, then delete the loose objects and the old packs. Unreachable objects are dropped, and
+     *  so are the local copies of the objects an alternate has, which are left to it.
+     *  The reflog entries older than the retention window are dropped first, and the commit graph is rewritten. */
+    public void gc() {
+        checkInitializeCondition("gc");
+
+        // The roots are the heads of all branches, the commits of the reflog entries within the retention window,
+        // plus the blobs staged for addition
+        List<ObjectId> tips = branchTips();
+        List<ObjectId> roots = new ArrayList<>(tips);
+        Reflog reflog = refs().reflog();
+        reflog.expire(System.currentTimeMillis() - Reflog.RETENTION_DAYS * 24 * 60 * 60 * 1000);
+        for (String branchName: reflog.branchNames()) {
+            for (Reflog.Entry entry: reflog.readAll(branchName)) {
+                for (ObjectId commitHash: new ObjectId[] {entry.oldId, entry.newId}) {
+                    if (commitHash != null && hasObject(commitHash)) {
+                        roots.add(commitHash);
+                    }
+                }
+            }
+        }
+        Set<ObjectId> reachable = reachableObjects(roots);
+        reachable.addAll(index().additionIndex.values());
+
+        // The objects of the alternates belong to other repositories: they are neither packed nor deleted.
+        // The local copies of such objects, such as the commits a clone pushed to its source, are dropped.
+        PackWriter writer = new PackWriter(PACKS);
+        for (ObjectId hashID: reachable) {
+            if ((looseObjects().has(hashID) || packedObjects().has(hashID)) && !inAlternates(hashID)) {
+                writer.add(hashID, objectStore());
+            }
+        }
+        sketchCache().retain(reachable);
+        List<PackFile> oldPacks = new ArrayList<>(packedObjects().packs());
+        File newPack = writer.finish();
+        closePacks();
+
+        for (PackFile pack: oldPacks) {
+            if (newPack == null || !pack.getFile().getName().equals(newPack.getName())) {
+                pack.getFile().delete();
+                PackFile.idxFileOf(pack.getFile()).delete();
+            }
+        }
+        for (String dirName: pathDict.get("objects").list()) {
+            File dir = join(pathDict.get("objects"), dirName);
+            if (dirName.length() == 2 && dir.isDirectory()) {
+                for (String fileName: plainFilenamesIn(dir)) {
+                    join(dir, fileName).delete();
+                }
+                dir.delete();
             }
         }
 
-        // Next deal with all the files present in split commit
-        boolean conflict = false;
-        Set<String> filesTrackedBySplit = splitCommit.getTrackedFiles();
-        for (String fileName: filesTrackedBySplit) {
-            File file = new File(fileName);
-            boolean trackedByHead = headCommit.tracked(fileName);
-            boolean trackedByTarget = targetCommit.tracked(fileName);
-            boolean modifiedInHead = !headCommit.getBlobHash(fileName).equals(splitCommit.getBlobHash(fileName));
-            boolean modifiedInTarget = !targetCommit.getBlobHash(fileName).equals(splitCommit.getBlobHash(fileName));
+        // Rewrite the commit graph, so that it covers the new commits
+        CommitGraph.write(tips);
+    }
 
+    /** Print the reflog of the branch BRANCHNAME (the current branch if null), newest entry first:
+     *  the commit the branch pointed to after each update, and why it moved. */
+    public void reflog(String branchName) {
+        checkInitializeCondition("reflog");
+        String name = branchName == null ? headBranchName() : branchName;
+        if (!refs().exists(name)) {
+            raiseError("No such branch exists.");
+        }
+        List<Reflog.Entry> entries = refs().reflog().readAll(name);
+        for (int i = 0; i < entries.size(); ++i) {
+            Reflog.Entry entry = entries.get(i);
+            System.out.println(entry.newId.abbreviate(7) + " " + name + "@{" + i + "}: " + entry.reason);
+        }
+    }
 
-            // Files modified in given branch but unmodified in current branch, take the modified version (including deletion)
-            if (!modifiedInHead && modifiedInTarget) {
-                if (trackedByTarget) {
-                    String blobhash = targetCommit.getBlobHash(fileName);
-                    dumpBlob(fileName, blobhash); // checkout the file
-                    index.add(fileName, blobhash); // stage for addition
-                } else {
-                    index.remove(fileName);
-                    if (file.exists()) {
-                        file.delete();
-                    }
+    /** Drop the reflog entries older than DAYS days. */
+    public void reflogExpire(long days) {
+        checkInitializeCondition("reflog");
+        refs().reflog().expire(System.currentTimeMillis() - days * 24 * 60 * 60 * 1000);
+    }
+
+    /** Move the branches into the packed-refs file, so that listing them reads a single file. */
+    public void packRefs() {
+        checkInitializeCondition("pack-refs");
+        refs().pack(Map.of());
+    }
+
+    /** Hash every object of the repository again and compare it with its name, then check that the branches,
+     *  HEAD and the staging area point to existing objects, and that every reachable commit has its parents
+     *  and blobs. Print the problems found and the throughput of the rehashing. */
+    public void fsck() {
+        checkInitializeCondition("fsck");
+        new Fsck().run();
+    }
+
+    /** Watch the working directory for changes until killed, so that status and add
+     *  only need to look at the files that changed. */
+    public void watch() {
+        checkInitializeCondition("watch");
+        FsMonitor.watch();
+    }
+
+    /** Print the line-level differences between two versions of the tracked files, in the unified format.
+     *  With no commit, compares the staging area with the working directory; with one commit, compares
+     *  that commit with the working directory; with two commits, compares them. "--cached" compares the head
+     *  commit (or the given one) with the staging area instead. "--histogram" selects the histogram algorithm
+     *  instead of Myers'. Files whose blob hashes are equal on both sides are skipped without being read.
+     *  A removed file found again, whole or mostly, as an added one is shown as a rename of it, unless
+     *  "--no-renames" is given. "--find-copies" also shows the added files that copy a file, or mostly copy a
+     *  modified one, as copies. */
+    public void diff(String... args) {
+        checkInitializeCondition("diff");
+
+        Diff.Algorithm algorithm = Diff.Algorithm.MYERS;
+        boolean cached = false;
+        boolean findRenames = true;
+        boolean findCopies = false;
+        List<ObjectId> commits = new ArrayList<>();
+        for (String arg: args) {
+            if (arg.equals("--no-renames")) {
+                findRenames = false;
+            } else if (arg.equals("--find-copies")) {
+                findCopies = true;
+            } else if (arg.equals("--histogram")) {
+                algorithm = Diff.Algorithm.HISTOGRAM;
+            } else if (arg.equals("--myers")) {
+                algorithm = Diff.Algorithm.MYERS;
+            } else if (arg.equals("--cached") || arg.equals("--staged")) {
+                cached = true;
+            } else if (arg.startsWith("-") || commits.size() == 2) {
+                raiseError("Incorrect operands.");
+            } else {
+                ObjectId commitHash = arg.length() >= 4 ? commitIDToSHA1(arg) : null;
+                if (commitHash == null) {
+                    raiseError("No commit with that id exists.");
                 }
+                commits.add(commitHash);
             }
+        }
+        if (cached && commits.size() == 2) {
+            raiseError("Incorrect operands.");
+        }
 
-            // If the file is modified in current branch and given branch in different ways, report a conflict
-            if (modifiedInHead && modifiedInTarget) {
-                if (!headCommit.getBlobHash(fileName).equals(targetCommit.getBlobHash(fileName))) {
-                    conflict = true;
-                    String headContent = "";
-                    String targetContent = "";
-                    if (trackedByHead) {
-                        headContent = readContentsAsString(hashToPath(headCommit.getBlobHash(fileName)));
-                    }
-                    if (trackedByTarget) {
-                        targetContent = readContentsAsString(hashToPath(targetCommit.getBlobHash(fileName)));
+        Snapshot oldSnapshot;
+        Snapshot newSnapshot;
+        boolean working = false;
+        if (commits.size() == 2) {
+            oldSnapshot = readCommit(commits.get(0)).getSnapshot();
+            newSnapshot = readCommit(commits.get(1)).getSnapshot();
+        } else if (cached) {
+            oldSnapshot = commits.isEmpty() ? headCommit().getSnapshot() : readCommit(commits.get(0)).getSnapshot();
+            newSnapshot = stagedSnapshot();
+        } else {
+            oldSnapshot = commits.isEmpty() ? stagedSnapshot() : readCommit(commits.get(0)).getSnapshot();
+            newSnapshot = trackedWorkingSnapshot(oldSnapshot);
+            working = true;
+        }
+
+        boolean readWorkingFiles = working;
+        Map<String, RenameDetector.Rename> renames = new HashMap<>();
+        Set<String> renamedFiles = new HashSet<>();
+        if (findRenames || findCopies) {
+            RenameDetector detector = new RenameDetector(oldSnapshot, newSnapshot,
+                    (fileName, blobHash) -> readBlob(blobHash), (fileName, blobHash) ->
+                    readWorkingFiles ? readContents(new File(fileName)) : readBlob(blobHash),
+                    sketchCache(), findCopies);
+            for (RenameDetector.Rename rename: detector.detect()) {
+                renames.put(rename.to, rename);
+                if (!rename.copy) {
+                    renamedFiles.add(rename.from);
+                }
+            }
+        }
+        Diff.Algorithm diffAlgorithm = algorithm;
+        Snapshot.join((fileName, ids) -> {
+            if (Objects.equals(ids[0], ids[1]) || (ids[1] == null && renamedFiles.contains(fileName))) {
+                return;
+            }
+            RenameDetector.Rename rename = renames.get(fileName);
+            byte[] oldContent = null;
+            if (rename != null) {
+                oldContent = readBlob(oldSnapshot.get(rename.from));
+            } else if (ids[0] != null) {
+                oldContent = readBlob(ids[0]);
+            }
+            byte[] newContent = null;
+            if (ids[1] != null) {
+                newContent = readWorkingFiles ? readContents(new File(fileName)) : readBlob(ids[1]);
+            }
+            Diff.diffFile(fileName, rename, oldContent, newContent, diffAlgorithm, System.out);
+        }, oldSnapshot, newSnapshot);
+    }
+
+    /** Return the hashes of the working files tracked by the staging area or by BASE.
+     *  Files outside the cone of a sparse checkout are taken as unchanged from BASE. */
+    private Snapshot trackedWorkingSnapshot(Snapshot base) {
+        Snapshot.Builder tracked = Snapshot.builder();
+        Snapshot.join((fileName, ids) -> {
+            boolean isTracked = ids[0] != null || ids[1] != null;
+            if (!isTracked) {
+                return;
+            }
+            if (ids[2] != null) {
+                tracked.put(fileName, ids[2]);
+            } else if (!inSparseCone(fileName) && ids[0] != null) {
+                tracked.put(fileName, ids[0]);
+            }
+        }, base, stagedSnapshot(), FsMonitor.workingSnapshot());
+        return tracked.build();
+    }
+
+    /** Manage the cone of the sparse checkout. "set PATH..." limits the working directory to the files directly in it
+     *  and the files beneath the given directories, "disable" writes every file again, and "list" prints the cone.
+     *  The working directory is updated to the new cone; a file leaving the cone is kept if it has changes. */
+    public void sparseCheckout(String command, String... paths) {
+        checkInitializeCondition("sparse-checkout");
+
+        SparseCheckout oldCone = RepoHelper.sparseCheckout();
+        switch (command) {
+            case "list":
+                if (oldCone != null) {
+                    for (String path: oldCone.getPaths()) {
+                        System.out.println(path);
                     }
-                    String conflictContent = "<<<<<<< HEAD\n" + headContent
-                            + "=======\n" + targetContent
-                            + ">>>>>>>\n";
-                    writeContents(file, conflictContent);
-                    String conflictHash = sha1(readContents(file));
-                    saveBlob(file, conflictHash);
-                    index.add(fileName, conflictHash);
+                }
+                return;
+            case "set":
+                if (paths.length == 0) {
+                    raiseError("Incorrect operands.");
+                }
+                SparseCheckout.SPARSE_FILE.getParentFile().mkdirs();
+                writeContents(SparseCheckout.SPARSE_FILE, String.join("\n", paths) + "\n");
+                break;
+            case "disable":
+                if (paths.length > 0) {
+                    raiseError("Incorrect operands.");
+                }
+                SparseCheckout.SPARSE_FILE.delete();
+                break;
+            default:
+                raiseError("Incorrect operands.");
+        }
+        reloadSparseCheckout();
+        // The cached hashes of the working files were limited to the old cone
+        FsMonitor.CACHE.delete();
+
+        Snapshot.Builder entering = Snapshot.builder();
+        Snapshot.Cursor cursor = headCommit().getSnapshot().cursor();
+        while (cursor.next()) {
+            String fileName = cursor.path();
+            boolean wasIn = oldCone == null || oldCone.includes(fileName);
+            boolean isIn = inSparseCone(fileName);
+            if (!wasIn && isIn) {
+                entering.put(fileName, index().stagedForAddition(fileName)
+                        ? index().getBlobHash(fileName) : cursor.id());
+            } else if (wasIn && !isIn) {
+                File file = new File(fileName);
+                ObjectId expected = index().stagedForAddition(fileName) ? index().getBlobHash(fileName) : cursor.id();
+                if (file.isFile() && hashObject(readContents(file)).equals(expected)) {
+                    deleteWorkingFile(fileName);
                 }
             }
         }
+        dumpSnapshot(entering.build());
+    }
+
+    /** Save the path of the .gitlet directory of another repository under the name REMOTENAME. */
+    public void addRemote(String remoteName, String remotePath) {
+        checkInitializeCondition("add-remote");
+        File remote = join(pathDict.get("remotes"), remoteName);
+        if (remote.exists()) {
+            raiseError("A remote with that name already exists.");
+        }
+        pathDict.get("remotes").mkdir();
+        writeContents(remote, remotePath.replace('/', File.separatorChar));
+    }
 
+    /** Remove the information associated with the remote REMOTENAME. */
+    public void rmRemote(String remoteName) {
+        checkInitializeCondition("rm-remote");
+        File remote = join(pathDict.get("remotes"), remoteName);
+        if (!remote.exists()) {
+            raiseError("A remote with that name does not exist.");
+        }
+        remote.delete();
+    }
 
-        // Initialize the merged commit with head commit
-        // Commit mergedCommit = readObject(hashToPath(headCommitHash), Commit.class);
-        if (index.stageSize() > 0) {
-            commit("Merged " + branchName + " into " + head.getName() + ".", targetCommitHash);
-            if (conflict) {
-                System.out.println("Encountered a merge conflict.");
+    /** Read the objects missing here from ALTERNATEPATH: another repository, its object directory, or
+     *  a directory of packs. The loose objects it has are deleted from this repository. */
+    public void addAlternate(String alternatePath) {
+        checkInitializeCondition("add-alternate");
+        File dir = new File(alternatePath);
+        if (!dir.getName().equals(".gitlet") && join(dir, ".gitlet").isDirectory()) {
+            dir = join(dir, ".gitlet");
+        }
+        File gitletDir = null;
+        if (dir.getName().equals(".gitlet")) {
+            gitletDir = dir;
+            dir = join(dir, "objects");
+        } else if (dir.getName().equals("objects") && dir.getParentFile() != null) {
+            gitletDir = dir.getParentFile();
+        }
+        if (!dir.isDirectory()) {
+            raiseError("Alternate directory not found.");
+        }
+        try {
+            if (dir.getCanonicalFile().equals(pathDict.get("objects").getCanonicalFile())) {
+                raiseError("A repository cannot be its own alternate.");
+            }
+            for (File alternate: readAlternates(pathDict.get("objects"))) {
+                if (alternate.getCanonicalFile().equals(dir.getCanonicalFile())) {
+                    raiseError("That alternate is already listed.");
+                }
+            }
+        } catch (IOException e) {
+            raiseError("Alternate directory not found.");
+        }
+        if (gitletDir != null && join(gitletDir, "HEAD").isFile()) {
+            checkFormat(gitletDir);
+            // The same object would have different IDs in the two repositories
+            if (HashAlgorithm.of(gitletDir) != hashAlgorithm()) {
+                raiseError("The alternate uses another hash algorithm.");
             }
         }
+        int deleted = RepoHelper.addAlternate(dir);
+        System.out.println("Deleted " + deleted + " loose objects found in the alternate.");
+    }
+
+    /** Copy the commits of the branch BRANCHNAME of the remote REMOTENAME that are missing here,
+     *  and point the branch REMOTENAME/BRANCHNAME at its head. */
+    public void fetch(String remoteName, String branchName) {
+        checkInitializeCondition("fetch");
+        Remote remote = openRemote(remoteName);
+        ObjectId remoteTip = remote.branchTip(branchName);
+        if (remoteTip == null) {
+            raiseError("That remote does not have that branch.");
+        }
+
+        Remote.transfer(remote, new Remote(pathDict.get("gitlet")), remoteTip);
+        remote.close();
+        closePacks();
+        refs().update(remoteName + "/" + branchName, remoteTip, "fetch: " + remoteName + " " + branchName);
+    }
+
+    /** Copy the commits of the current branch that are missing in the remote REMOTENAME,
+     *  and point its branch BRANCHNAME at the current head commit. The head of that branch must be
+     *  in the history of the current branch, and must not be the current branch of the remote: its working
+     *  directory and staging area, which push leaves untouched, would no longer match its head. */
+    public void push(String remoteName, String branchName) {
+        checkInitializeCondition("push");
+        Remote remote = openRemote(remoteName);
+        if (branchName.equals(remote.headBranchName())) {
+            raiseError("That branch is checked out in the remote; push to another branch.");
+        }
+        ObjectId remoteTip = remote.branchTip(branchName);
+        if (remoteTip != null && (!hasObject(remoteTip) || !remoteTip.equals(findSplit(headCommitHash(), remoteTip)))) {
+            raiseError("Please pull down remote changes before pushing.");
+        }
+
+        Remote.transfer(new Remote(pathDict.get("gitlet")), remote, headCommitHash());
+        remote.setBranchTip(branchName, headCommitHash(), "push: from " + CWD.getPath());
+        remote.close();
+    }
 
+    /** Fetch the branch BRANCHNAME of the remote REMOTENAME, then merge it into the current branch. */
+    public void pull(String remoteName, String branchName) {
+        fetch(remoteName, branchName);
+        merge(remoteName + "/" + branchName);
+    }
+
+    /** Return the repository saved under the name REMOTENAME by add-remote. */
+    private Remote openRemote(String remoteName) {
+        File remote = join(pathDict.get("remotes"), remoteName);
+        if (!remote.exists()) {
+            raiseError("A remote with that name does not exist.");
+        }
+        Remote repository = new Remote(remoteGitletDir(readContentsAsString(remote)));
+        // The same object would have different IDs in the two repositories
+        if (repository.getHashAlgorithm() != hashAlgorithm()) {
+            raiseError("The remote repository uses another hash algorithm.");
+        }
+        return repository;
+    }
+
+    /** Return the .gitlet directory at REMOTEPATH, which may also name the working directory of the repository. */
+    private static File remoteGitletDir(String remotePath) {
+        File remoteDir = new File(remotePath);
+        if (!remoteDir.getName().equals(".gitlet") && join(remoteDir, ".gitlet").isDirectory()) {
+            remoteDir = join(remoteDir, ".gitlet");
+        }
+        if (!remoteDir.isDirectory()) {
+            raiseError("Remote directory not found.");
+        }
+        return remoteDir;
+    }
+
+    /** Create a repository in the current directory from the repository at SOURCEPATH, saved as the remote
+     *  "origin", and check out its current branch. Objects are immutable, so instead of being copied they are
+     *  hardlinked, or read from the source through the alternates file when the two repositories are on
+     *  different filesystems. The branches of the source are recorded as origin/[branch name]. */
+    public void cloneRepo(String sourcePath) {
+        checkInitializeCondition("init");
+
+        Remote source = new Remote(remoteGitletDir(sourcePath));
+        String branchName = source.headBranchName();
+        ObjectId tip = source.branchTip(branchName);
+        Snapshot snapshot = source.readCommit(tip).getSnapshot();
+        source.close();
+        for (String fileName: snapshot) {
+            if (!ignoreMatcher().isIgnored(fileName) && new File(fileName).isFile()) {
+                raiseError("There is an untracked file in the way; delete it, or add and commit it first.");
+            }
+        }
+
+        // Establish the directory structure of .gitlet, sharing the objects of the source
+        pathDict.get("gitlet").mkdir();
+        pathDict.get("objects").mkdir();
+        pathDict.get("branches").mkdir();
+        saveFormat(pathDict.get("gitlet"));
+        setHashAlgorithm(source.getHashAlgorithm());
+        shareObjects(join(source.getDir(), "objects"));
+
+        // The branches of the source go straight into packed-refs, however many there are
+        Map<String, ObjectId> remoteBranches = new HashMap<>();
+        for (String remoteBranch: source.branchNames()) {
+            remoteBranches.put("origin/" + remoteBranch, source.branchTip(remoteBranch));
+        }
+        refs().pack(remoteBranches);
+        refs().update(branchName, tip, "clone: from " + source.getDir().getAbsolutePath());
+        writeContents(pathDict.get("HEAD"), join(".gitlet", "branches", branchName).getPath());
+        pathDict.get("remotes").mkdir();
+        writeContents(join(pathDict.get("remotes"), "origin"), source.getDir().getAbsolutePath());
+        new Staging().save();
+        File sourceLog = join(source.getDir(), "log");
+        writeContents(pathDict.get("log"), sourceLog.isFile() ? readContents(sourceLog) : new byte[0]);
+
+        // Write the files of the branch on the worker pool
+        dumpSnapshot(snapshot);
     }
 }
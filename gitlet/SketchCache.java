@@ -0,0 +1,154 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import static gitlet.Utils.*;
+
+/** The MinHash sketches of blobs computed by RenameDetector, kept in memory, and in a file if there is one.
+ *
+ *  Blobs never change, so a sketch computed once holds for good, and new sketches are appended to the file.
+ *  Each record is framed by its length and ends with a CRC-32 of the ID and sketch it holds. A record torn
+ *  by an interrupted append can only be the last one, and is cut off the file; a file with any other
+ *  malformed record is dropped, since the records after it could not be trusted either. gc rewrites the
+ *  file with the sketches of the reachable blobs only, dropping those of files that were never committed.
+ */
+class SketchCache {
+
+    /** Size of a record: its length, the blob ID, the sketch and the checksum. */
+    private static final int RECORD_SIZE = 4 + ObjectId.RAW_LENGTH + 8 * RenameDetector.SKETCH_SIZE + 4;
+
+    /** The file of the cache, or null if it is kept in memory only */
+    private final File file;
+
+    /** The sketches, loaded on first use; null for empty blobs, which have no sketch */
+    private Map<ObjectId, long[]> sketches;
+
+    /** A cache saved in FILE, or kept in memory only if FILE is null. */
+    SketchCache(File file) {
+        this.file = file;
+    }
+
+    /** Whether the sketch of blob ID is cached. */
+    synchronized boolean contains(ObjectId id) {
+        return sketches().containsKey(id);
+    }
+
+    /** Return the sketch of blob ID, which must be cached. */
+    synchronized long[] get(ObjectId id) {
+        return sketches().get(id);
+    }
+
+    /** Cache the sketches of NEWSKETCHES, mapping blob IDs to sketches, appending them to the file. */
+    synchronized void putAll(Map<ObjectId, long[]> newSketches) {
+        sketches().putAll(newSketches);
+        if (file == null || newSketches.isEmpty()) {
+            return;
+        }
+        file.getParentFile().mkdirs();
+        try (OutputStream out = new FileOutputStream(file, true)) {
+            out.write(encode(newSketches));
+        } catch (IOException e) {
+            throw error(e.getMessage());
+        }
+    }
+
+    /** Drop the sketches of the blobs not in IDS, rewriting the file. */
+    synchronized void retain(Set<ObjectId> ids) {
+        sketches().keySet().retainAll(ids);
+        if (file == null || !file.isFile()) {
+            return;
+        }
+        File temp = new File(file.getParentFile(), "tmp-sketches");
+        writeContents(temp, (Object) encode(sketches));
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw error(e.getMessage());
+        }
+    }
+
+    private Map<ObjectId, long[]> sketches() {
+        if (sketches == null) {
+            sketches = new HashMap<>();
+            if (file != null && file.isFile()) {
+                load();
+            }
+        }
+        return sketches;
+    }
+
+    /** Read the records of the file, cutting off a torn last record, or dropping the file if it is malformed. */
+    private void load() {
+        ByteBuffer records = ByteBuffer.wrap(readContents(file));
+        byte[] raw = new byte[ObjectId.RAW_LENGTH];
+        CRC32 crc = new CRC32();
+        while (records.hasRemaining()) {
+            int start = records.position();
+            boolean last = records.remaining() <= RECORD_SIZE;
+            if (records.remaining() < 4 || records.getInt() != RECORD_SIZE || records.remaining() < RECORD_SIZE - 4) {
+                drop(start, last);
+                return;
+            }
+            crc.reset();
+            crc.update(records.array(), start + 4, RECORD_SIZE - 8);
+            records.get(raw);
+            long[] sketch = new long[RenameDetector.SKETCH_SIZE];
+            for (int k = 0; k < sketch.length; ++k) {
+                sketch[k] = records.getLong();
+            }
+            if (records.getInt() != (int) crc.getValue()) {
+                drop(start, last);
+                return;
+            }
+            sketches.put(ObjectId.fromRaw(raw), sketch[0] == Long.MAX_VALUE ? null : sketch);
+        }
+    }
+
+    /** Handle a malformed record at offset START: cut it off the file if it is the LAST one, which an interrupted
+     *  append may have torn, or else drop the whole file and the sketches read from it. */
+    private void drop(int start, boolean last) {
+        if (!last) {
+            sketches.clear();
+            file.delete();
+            return;
+        }
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(start);
+        } catch (IOException e) {
+            throw error(e.getMessage());
+        }
+    }
+
+    private static byte[] encode(Map<ObjectId, long[]> sketches) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(sketches.size() * RECORD_SIZE);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        CRC32 crc = new CRC32();
+        for (Map.Entry<ObjectId, long[]> entry: sketches.entrySet()) {
+            long[] sketch = entry.getValue();
+            record.clear();
+            record.putInt(RECORD_SIZE);
+            record.put(entry.getKey().toRaw());
+            for (int k = 0; k < RenameDetector.SKETCH_SIZE; ++k) {
+                record.putLong(sketch == null ? Long.MAX_VALUE : sketch[k]);
+            }
+            crc.reset();
+            crc.update(record.array(), 4, RECORD_SIZE - 8);
+            record.putInt((int) crc.getValue());
+            out.write(record.array(), 0, RECORD_SIZE);
+        }
+        return out.toByteArray();
+    }
+}
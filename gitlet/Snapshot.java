@@ -0,0 +1,378 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/** An immutable snapshot of the files tracked by a commit, mapping relative paths to blob IDs.
+ *
+ *  Entries are kept sorted by the UTF-8 bytes of their paths in three flat arrays:
+ *  the paths are front-coded (each path only stores the suffix that differs from the previous one),
+ *  the blob IDs are packed back to back as raw bytes, and every RESTART_INTERVAL-th path is stored
+ *  in full so that lookups can binary-search the restart points and then scan a short block.
+ *  Two snapshots can be walked side by side in one linear pass with join().
+ */
+public final class Snapshot implements Serializable, Iterable<String> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** An empty snapshot, tracked by the initial commit. */
+    public static final Snapshot EMPTY = new Builder(null).build();
+
+    /** The order of the entries in a snapshot: unsigned comparison of the UTF-8 bytes of the paths. */
+    public static final Comparator<String> PATH_ORDER = (p1, p2) -> Arrays.compareUnsigned(encode(p1), encode(p2));
+
+    /** Every RESTART_INTERVAL-th path is stored without front coding. */
+    private static final int RESTART_INTERVAL = 16;
+
+    /** Number of entries. */
+    private final int size;
+
+    /** For each entry: varint length of the prefix shared with the previous path,
+     *  varint length of the suffix, then the suffix bytes. */
+    private final byte[] paths;
+
+    /** Offsets in paths of entries 0, RESTART_INTERVAL, 2 * RESTART_INTERVAL, ... */
+    private final int[] restarts;
+
+    /** The blob IDs of the entries, ObjectId.RAW_LENGTH bytes each. */
+    private final byte[] ids;
+
+    private Snapshot(int size, byte[] paths, int[] restarts, byte[] ids) {
+        this.size = size;
+        this.paths = paths;
+        this.restarts = restarts;
+        this.ids = ids;
+    }
+
+    /** Return a builder for a snapshot that starts out with no entries. */
+    public static Builder builder() {
+        return new Builder(null);
+    }
+
+    /** Return a builder for a snapshot that starts out with the entries of this one. */
+    public Builder edit() {
+        return new Builder(this);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(String path) {
+        return find(encode(path)) >= 0;
+    }
+
+    /** Return the blob ID of PATH, or null if PATH is not in this snapshot. */
+    public ObjectId get(String path) {
+        int i = find(encode(path));
+        return i < 0 ? null : idAt(i);
+    }
+
+    /** Two snapshots are equal if they map the same paths to the same blob IDs. */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Snapshot)) {
+            return false;
+        }
+        // The encoding of a snapshot only depends on its entries
+        Snapshot other = (Snapshot) obj;
+        return size == other.size && Arrays.equals(ids, other.ids) && Arrays.equals(paths, other.paths);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(ids);
+    }
+
+    /** Iterate over the paths in this snapshot in PATH_ORDER. */
+    @Override
+    public Iterator<String> iterator() {
+        Cursor cursor = cursor();
+        return new Iterator<>() {
+            private boolean ready = cursor.next();
+
+            @Override
+            public boolean hasNext() {
+                return ready;
+            }
+
+            @Override
+            public String next() {
+                if (!ready) {
+                    throw new NoSuchElementException();
+                }
+                String path = cursor.path();
+                ready = cursor.next();
+                return path;
+            }
+        };
+    }
+
+    /** Return a cursor positioned before the first entry. */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /** Receives the entries of a join of several snapshots. */
+    public interface JoinVisitor {
+        /** Called once for every PATH in any of the joined snapshots, in PATH_ORDER.
+         *  IDS[i] is the blob ID of PATH in the i-th snapshot, or null if it is absent there. */
+        void visit(String path, ObjectId[] ids);
+    }
+
+    /** Walk SNAPSHOTS side by side in a single linear pass, calling VISITOR on the union of their paths. */
+    public static void join(JoinVisitor visitor, Snapshot... snapshots) {
+        Cursor[] cursors = new Cursor[snapshots.length];
+        boolean[] live = new boolean[snapshots.length];
+        for (int i = 0; i < snapshots.length; ++i) {
+            cursors[i] = snapshots[i].cursor();
+            live[i] = cursors[i].next();
+        }
+        while (true) {
+            int minIndex = -1;
+            for (int i = 0; i < cursors.length; ++i) {
+                if (live[i] && (minIndex < 0 || cursors[i].compareTo(cursors[minIndex]) < 0)) {
+                    minIndex = i;
+                }
+            }
+            if (minIndex < 0) {
+                return;
+            }
+            Cursor min = cursors[minIndex];
+            String path = min.path();
+            ObjectId[] entryIds = new ObjectId[cursors.length];
+            for (int i = 0; i < cursors.length; ++i) {
+                if (live[i] && cursors[i].compareTo(min) == 0) {
+                    entryIds[i] = cursors[i].id();
+                }
+            }
+            for (int i = 0; i < cursors.length; ++i) {
+                if (entryIds[i] != null) {
+                    live[i] = cursors[i].next();
+                }
+            }
+            visitor.visit(path, entryIds);
+        }
+    }
+
+    /** A forward-only position in a snapshot. */
+    public final class Cursor implements Comparable<Cursor> {
+        private int index = -1;
+        private int offset = 0;
+        private byte[] key = new byte[64];
+        private int keyLength = 0;
+
+        /** Move to the next entry, returning false if there is none. */
+        public boolean next() {
+            if (index + 1 >= size) {
+                index = size;
+                return false;
+            }
+            index += 1;
+            offset = decodeEntry(offset);
+            return true;
+        }
+
+        /** The path of the current entry. */
+        public String path() {
+            return new String(key, 0, keyLength, StandardCharsets.UTF_8);
+        }
+
+        /** The blob ID of the current entry. */
+        public ObjectId id() {
+            return idAt(index);
+        }
+
+        /** Compare the paths of the current entries of this cursor and OTHER in PATH_ORDER. */
+        @Override
+        public int compareTo(Cursor other) {
+            return Arrays.compareUnsigned(key, 0, keyLength, other.key, 0, other.keyLength);
+        }
+
+        /** Decode the entry starting at POS into key, returning the offset of the next entry. */
+        private int decodeEntry(int pos) {
+            int[] cell = {pos};
+            int shared = readVarint(paths, cell);
+            int suffix = readVarint(paths, cell);
+            if (shared + suffix > key.length) {
+                key = Arrays.copyOf(key, Math.max(2 * key.length, shared + suffix));
+            }
+            System.arraycopy(paths, cell[0], key, shared, suffix);
+            keyLength = shared + suffix;
+            return cell[0] + suffix;
+        }
+    }
+
+    /** Return the index of the entry whose path has UTF-8 bytes TARGET, or -1 if there is none. */
+    private int find(byte[] target) {
+        // Binary search for the last restart point whose path is <= target
+        int lo = 0;
+        int hi = restarts.length - 1;
+        int block = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int[] cell = {restarts[mid]};
+            readVarint(paths, cell);
+            int length = readVarint(paths, cell);
+            int cmp = Arrays.compareUnsigned(paths, cell[0], cell[0] + length, target, 0, target.length);
+            if (cmp == 0) {
+                return mid * RESTART_INTERVAL;
+            } else if (cmp < 0) {
+                block = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if (block < 0) {
+            return -1;
+        }
+        // Then scan the entries of that block
+        Cursor cursor = new Cursor();
+        cursor.index = block * RESTART_INTERVAL - 1;
+        cursor.offset = restarts[block];
+        int end = Math.min(size, (block + 1) * RESTART_INTERVAL);
+        while (cursor.index + 1 < end) {
+            cursor.next();
+            int cmp = Arrays.compareUnsigned(cursor.key, 0, cursor.keyLength, target, 0, target.length);
+            if (cmp == 0) {
+                return cursor.index;
+            } else if (cmp > 0) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private ObjectId idAt(int i) {
+        return ObjectId.fromRaw(ids, i * ObjectId.RAW_LENGTH);
+    }
+
+    /** Return the UTF-8 bytes of PATH. */
+    private static byte[] encode(String path) {
+        return path.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /** Read a varint from DATA at CELL[0], advancing CELL[0] past it. */
+    private static int readVarint(byte[] data, int[] cell) {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = data[cell[0]++];
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+    /** Collects the changes made to a snapshot and produces a new one.
+     *  build() merges the changes into the base snapshot in a single linear pass. */
+    public static final class Builder {
+        private final Snapshot base;
+
+        /** Changed paths in PATH_ORDER, mapped to their new blob IDs (null for removals). */
+        private final TreeMap<byte[], ObjectId> changes = new TreeMap<>(Arrays::compareUnsigned);
+
+        private Builder(Snapshot base) {
+            this.base = base;
+        }
+
+        /** Map PATH to BLOBHASH, replacing any previous version of PATH. */
+        public Builder put(String path, ObjectId blobHash) {
+            changes.put(encode(path), blobHash);
+            return this;
+        }
+
+        /** Remove PATH, if present. */
+        public Builder remove(String path) {
+            changes.put(encode(path), null);
+            return this;
+        }
+
+        public Snapshot build() {
+            ByteArrayOutputStream pathOut = new ByteArrayOutputStream();
+            ByteArrayOutputStream idOut = new ByteArrayOutputStream();
+            int[] restartOffsets = new int[16];
+            byte[] previous = new byte[0];
+            byte[] rawId = new byte[ObjectId.RAW_LENGTH];
+            int count = 0;
+
+            Cursor cursor = base == null ? null : base.cursor();
+            boolean baseLive = cursor != null && cursor.next();
+            Iterator<Map.Entry<byte[], ObjectId>> changeIter = changes.entrySet().iterator();
+            Map.Entry<byte[], ObjectId> change = changeIter.hasNext() ? changeIter.next() : null;
+
+            while (baseLive || change != null) {
+                byte[] path;
+                ObjectId id;
+                int cmp;
+                if (!baseLive) {
+                    cmp = 1;
+                } else if (change == null) {
+                    cmp = -1;
+                } else {
+                    cmp = Arrays.compareUnsigned(cursor.key, 0, cursor.keyLength,
+                            change.getKey(), 0, change.getKey().length);
+                }
+                if (cmp < 0) {
+                    path = Arrays.copyOf(cursor.key, cursor.keyLength);
+                    id = cursor.id();
+                    baseLive = cursor.next();
+                } else {
+                    path = change.getKey();
+                    id = change.getValue();
+                    if (cmp == 0) {
+                        baseLive = cursor.next();
+                    }
+                    change = changeIter.hasNext() ? changeIter.next() : null;
+                }
+                if (id == null) {
+                    continue;
+                }
+
+                int shared = 0;
+                if (count % RESTART_INTERVAL == 0) {
+                    if (count / RESTART_INTERVAL == restartOffsets.length) {
+                        restartOffsets = Arrays.copyOf(restartOffsets, 2 * restartOffsets.length);
+                    }
+                    restartOffsets[count / RESTART_INTERVAL] = pathOut.size();
+                } else {
+                    int limit = Math.min(previous.length, path.length);
+                    while (shared < limit && previous[shared] == path[shared]) {
+                        shared += 1;
+                    }
+                }
+                writeVarint(pathOut, shared);
+                writeVarint(pathOut, path.length - shared);
+                pathOut.write(path, shared, path.length - shared);
+                id.copyRawTo(rawId, 0);
+                idOut.write(rawId, 0, rawId.length);
+                previous = path;
+                count += 1;
+            }
+            int restartCount = (count + RESTART_INTERVAL - 1) / RESTART_INTERVAL;
+            return new Snapshot(count, pathOut.toByteArray(), Arrays.copyOf(restartOffsets, restartCount),
+                    idOut.toByteArray());
+        }
+    }
+}
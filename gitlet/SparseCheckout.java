@@ -0,0 +1,83 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** The cone of a sparse checkout, read from .gitlet/info/sparse-checkout.
+ *
+ *  Each non-empty line of the file not starting with '#' is the relative path of a directory (or of a file).
+ *  The cone is made of the files directly in the working directory, plus every path at or beneath one of the
+ *  listed ones. Files outside the cone stay tracked in the snapshots, but are neither written by checkout,
+ *  reset and merge, nor looked at by status. Since the patterns are plain paths, a walk of the working
+ *  directory can tell from the name of a directory alone whether anything beneath it is in the cone,
+ *  and never enters the others.
+ */
+class SparseCheckout {
+
+    static final File SPARSE_FILE = join(".gitlet", "info", "sparse-checkout");
+
+    /** The listed paths, without leading or trailing '/' */
+    private final TreeSet<String> paths = new TreeSet<>();
+
+    SparseCheckout(Collection<String> lines) {
+        for (String line: lines) {
+            String path = line.strip();
+            if (path.isEmpty() || path.startsWith("#")) {
+                continue;
+            }
+            while (path.startsWith("/")) {
+                path = path.substring(1);
+            }
+            while (path.endsWith("/")) {
+                path = path.substring(0, path.length() - 1);
+            }
+            if (!path.isEmpty()) {
+                paths.add(path);
+            }
+        }
+    }
+
+    /** Read the sparse-checkout file, or return null if the checkout is not sparse. */
+    static SparseCheckout load() {
+        if (!SPARSE_FILE.isFile()) {
+            return null;
+        }
+        return new SparseCheckout(Arrays.asList(readContentsAsString(SPARSE_FILE).split("\n")));
+    }
+
+    /** Return the listed paths, in lexicographical order. */
+    Collection<String> getPaths() {
+        return paths;
+    }
+
+    /** Whether the file at relative path PATH is in the cone. */
+    boolean includes(String path) {
+        return path.indexOf('/') < 0 || atOrBeneathListed(path);
+    }
+
+    /** Whether the directory at relative path DIR may contain files of the cone. */
+    boolean entersDirectory(String dir) {
+        if (atOrBeneathListed(dir)) {
+            return true;
+        }
+        // A listed path beneath DIR sorts right after DIR + "/"
+        String below = paths.ceiling(dir + "/");
+        return below != null && below.startsWith(dir + "/");
+    }
+
+    /** Whether PATH or one of its parent directories is listed. */
+    private boolean atOrBeneathListed(String path) {
+        int slash = path.indexOf('/');
+        while (slash >= 0) {
+            if (paths.contains(path.substring(0, slash))) {
+                return true;
+            }
+            slash = path.indexOf('/', slash + 1);
+        }
+        return paths.contains(path);
+    }
+}
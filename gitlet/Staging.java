@@ -1,32 +1,96 @@
 package gitlet;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
-import static gitlet.Utils.join;
-import static gitlet.Utils.writeObject;
-
-/** This simple class represents the staging area of gitlet */
+import static gitlet.Utils.*;
+
+/** This simple class represents the staging area of gitlet.
+ *
+ *  On disk, it is a checkpoint, the serialized Staging in .gitlet/index, plus a journal of the changes made
+ *  since, .gitlet/index.journal, one line per change: "A [blob id] [path]" stages a file for addition,
+ *  "C [path]" cancels that, "R [path]" stages a file for removal and "U [path]" cancels that.
+ *  save() appends the changes made since the staging area was loaded to the journal, so staging one
+ *  file writes one line, however many files are staged; load() replays the journal over the checkpoint.
+ *  A new checkpoint is written, and the journal deleted, when the staging area is cleared or the journal
+ *  passes MAX_JOURNAL_BYTES. A line cut short by a crash is ignored.
+ *
+ *  Each checkpoint has a generation number, and a journal starts with the line "G [generation]" of the
+ *  checkpoint it applies to. A crash between writing a checkpoint and deleting the old journal thus leaves
+ *  a journal of an older generation, which load() ignores instead of replaying it over the new checkpoint.
+ */
 public class Staging implements Serializable {
 
+    private static final long serialVersionUID = 1L;
+
+    static final File INDEX_FILE = join(".gitlet", "index");
+    static final File JOURNAL_FILE = join(".gitlet", "index.journal");
+
+    /** Size of the journal past which save() writes a new checkpoint instead. */
+    static final long MAX_JOURNAL_BYTES = 64 * 1024;
+
     /** "index" is a hashmap that maps the relative path of a file
      * to the filename of its blob(namely the sha1 of its content)
      */
-    protected Map<String, String> additionIndex;
+    protected Map<String, ObjectId> additionIndex;
     protected Set<String> removalIndex;
 
+    /** The generation of the checkpoint, which the journal must name to be replayed. */
+    private long generation;
+
+    /** The journal lines of the changes not saved yet. */
+    private transient StringBuilder pending;
+
+    /** Whether the next save() must write a checkpoint. */
+    private transient boolean checkpointNeeded;
+
     public Staging() {
         additionIndex = new HashMap<>();
         removalIndex = new HashSet<>();
+        pending = new StringBuilder();
+        checkpointNeeded = true;
+    }
+
+    /** Read the staging area of the repository: the checkpoint, then the changes of the journal. */
+    public static Staging load() {
+        Staging staging = readObject(INDEX_FILE, Staging.class);
+        staging.pending = new StringBuilder();
+        if (JOURNAL_FILE.isFile()) {
+            String journal = readContentsAsString(JOURNAL_FILE);
+            int start = 0;
+            int end = journal.indexOf('\n');
+            if (end < 0 || !journal.substring(0, end).equals("G " + staging.generation)) {
+                // The journal of an older checkpoint, or one whose first line is torn
+                staging.checkpointNeeded = true;
+                return staging;
+            }
+            start = end + 1;
+            end = journal.indexOf('\n', start);
+            while (end >= 0) {
+                staging.replay(journal.substring(start, end));
+                start = end + 1;
+                end = journal.indexOf('\n', start);
+            }
+            // Appending after a torn line would merge it with the next one
+            staging.checkpointNeeded = start < journal.length();
+        }
+        return staging;
     }
 
     /** Stage a file for addition. If the file is already in the index for addition, overwrite it*/
-    public void add(String filePath, String blobHash) {
+    public void add(String filePath, ObjectId blobHash) {
         additionIndex.put(filePath, blobHash);
+        pending.append("A ").append(blobHash).append(' ').append(filePath).append('\n');
     }
 
     /** Check whether a file has been staged for addition */
@@ -35,19 +99,16 @@ public class Staging implements Serializable {
     }
 
 
-    /** Return the sha1 of a file staged for addition, if this file hasn't been staged, return "null" */
-    public String getBlobHash(String filePath) {
-        if (stagedForAddition(filePath)) {
-            return additionIndex.get(filePath);
-        } else {
-            return "null";
-        }
+    /** Return the sha1 of a file staged for addition, if this file hasn't been staged, return null */
+    public ObjectId getBlobHash(String filePath) {
+        return additionIndex.get(filePath);
     }
 
     /** Delete a file from the additionIndex */
     public void cancelAdd(String filePath) {
         if (stagedForAddition(filePath)) {
             additionIndex.remove(filePath);
+            pending.append("C ").append(filePath).append('\n');
         }
     }
 
@@ -55,6 +116,7 @@ public class Staging implements Serializable {
     /** Stage a file for removal.*/
     public void remove(String filePath) {
         removalIndex.add(filePath);
+        pending.append("R ").append(filePath).append('\n');
     }
 
     /** Check whether a file has been staged for removal */
@@ -66,6 +128,7 @@ public class Staging implements Serializable {
     public void cancelRemove(String filePath) {
         if (stagedForRemoval(filePath)) {
             removalIndex.remove(filePath);
+            pending.append("U ").append(filePath).append('\n');
         }
     }
 
@@ -73,6 +136,8 @@ public class Staging implements Serializable {
     public void clear() {
         additionIndex.clear();
         removalIndex.clear();
+        pending.setLength(0);
+        checkpointNeeded = true;
     }
 
     public int stageSize() {
@@ -80,10 +145,71 @@ public class Staging implements Serializable {
     }
 
 
-    /** Write the content of Staging object back to .gitlet/index */
+    /** Save the changes made to the staging area: append them to .gitlet/index.journal,
+     *  or write a new checkpoint to .gitlet/index if needed */
     public void save() {
-        File savePath = join( ".gitlet", "index");
-        writeObject(savePath, this);
+        long journalSize = JOURNAL_FILE.isFile() ? JOURNAL_FILE.length() : 0;
+        if (checkpointNeeded || journalSize + pending.length() > MAX_JOURNAL_BYTES) {
+            checkpoint();
+            return;
+        }
+        if (pending.length() == 0) {
+            return;
+        }
+        if (journalSize == 0) {
+            pending.insert(0, "G " + generation + "\n");
+        }
+        // A single write in append mode, so that a crash leaves at most a torn last line
+        try (OutputStream out = new FileOutputStream(JOURNAL_FILE, true)) {
+            out.write(pending.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw error(e.getMessage());
+        }
+        pending.setLength(0);
     }
 
+    /** Write the whole staging area to .gitlet/index as a new generation, then delete the journal it now
+     *  includes, which names an older generation from then on. */
+    private void checkpoint() {
+        generation += 1;
+        File temp = join(".gitlet", "index.tmp");
+        writeObject(temp, this);
+        try {
+            Files.move(temp.toPath(), INDEX_FILE.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw error(e.getMessage());
+        }
+        JOURNAL_FILE.delete();
+        pending.setLength(0);
+        checkpointNeeded = false;
+    }
+
+    /** Apply the journal line LINE. */
+    private void replay(String line) {
+        if (line.length() < 2 || line.charAt(1) != ' ') {
+            throw new IllegalArgumentException("corrupted staging journal: " + line);
+        }
+        String rest = line.substring(2);
+        switch (line.charAt(0)) {
+            case 'A':
+                int space = rest.indexOf(' ');
+                if (space != ObjectId.HEX_LENGTH) {
+                    throw new IllegalArgumentException("corrupted staging journal: " + line);
+                }
+                additionIndex.put(rest.substring(space + 1), ObjectId.fromHex(rest.substring(0, space)));
+                break;
+            case 'C':
+                additionIndex.remove(rest);
+                break;
+            case 'R':
+                removalIndex.add(rest);
+                break;
+            case 'U':
+                removalIndex.remove(rest);
+                break;
+            default:
+                throw new IllegalArgumentException("corrupted staging journal: " + line);
+        }
+    }
 }
@@ -0,0 +1,124 @@
+package gitlet;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/** Lists the plain files of a working tree, one fork/join task per directory.
+ *
+ *  The paths returned are relative to the working directory, separated by '/', and sorted in
+ *  Snapshot.PATH_ORDER, so they can be joined with commit snapshots directly. Every task sorts the
+ *  entries of its own directory (a directory sorting as its name followed by '/'), so concatenating
+ *  the results of the subdirectories in that order keeps the whole list sorted.
+ *  Files and directories matched by the ignore patterns are skipped before being stat'ed,
+ *  and symbolic links to directories are not followed. In a sparse checkout, the directories that
+ *  hold no file of the cone are not entered.
+ */
+class TreeWalker {
+
+    /** The pool of the walk tasks. Listing directories mostly waits for the disk,
+     *  so it runs more threads than there are cores. */
+    private static ForkJoinPool pool;
+
+    private final IgnoreMatcher matcher;
+
+    /** The cone of the sparse checkout, or null to walk the whole tree */
+    private final SparseCheckout sparse;
+
+    TreeWalker(IgnoreMatcher matcher) {
+        this(matcher, null);
+    }
+
+    TreeWalker(IgnoreMatcher matcher, SparseCheckout sparse) {
+        this.matcher = matcher;
+        this.sparse = sparse;
+    }
+
+    /** Return the relative paths of the files under the relative directory DIR ("" for the working directory),
+     *  sorted in Snapshot.PATH_ORDER. */
+    List<String> walk(String dir) {
+        Path start = dir.isEmpty() ? Paths.get(".") : Paths.get(dir);
+        return pool().invoke(new Task(start, dir.isEmpty() ? "" : dir + "/"));
+    }
+
+    private static synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+        }
+        return pool;
+    }
+
+    /** An entry of a directory: either a file, or a subdirectory being walked by its own task. */
+    private static class Entry {
+        private final byte[] key;
+        private final String file;
+        private final Task task;
+
+        Entry(String key, String file, Task task) {
+            this.key = key.getBytes(StandardCharsets.UTF_8);
+            this.file = file;
+            this.task = task;
+        }
+    }
+
+    private class Task extends RecursiveTask<List<String>> {
+        private final Path dir;
+        private final String prefix;
+
+        Task(Path dir, String prefix) {
+            this.dir = dir;
+            this.prefix = prefix;
+        }
+
+        @Override
+        protected List<String> compute() {
+            List<Entry> entries = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path entry: stream) {
+                    String name = entry.getFileName().toString();
+                    String path = prefix + name;
+                    int match = matcher.match(path);
+                    if (match == IgnoreMatcher.IGNORED) {
+                        continue;
+                    }
+                    BasicFileAttributes attributes =
+                            Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attributes.isDirectory()) {
+                        if (match == IgnoreMatcher.NOT_IGNORED && (sparse == null || sparse.entersDirectory(path))) {
+                            Task task = new Task(entry, path + "/");
+                            task.fork();
+                            entries.add(new Entry(name + "/", null, task));
+                        }
+                    } else if ((attributes.isRegularFile()
+                            || (attributes.isSymbolicLink() && Files.isRegularFile(entry)))
+                            && (sparse == null || sparse.includes(path))) {
+                        entries.add(new Entry(name, path, null));
+                    }
+                }
+            } catch (IOException e) {
+                throw Utils.error(e.getMessage());
+            }
+
+            entries.sort((e1, e2) -> Arrays.compareUnsigned(e1.key, e2.key));
+            List<String> files = new ArrayList<>();
+            for (Entry entry: entries) {
+                if (entry.task == null) {
+                    files.add(entry.file);
+                } else {
+                    files.addAll(entry.task.join());
+                }
+            }
+            return files;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package gitlet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** The memory-mapped windows of the open pack files.
+ *
+ *  A pack is never mapped as a whole. It is mapped in aligned windows of WINDOW_SIZE bytes
+ *  (objects crossing a window boundary get a window of their own), and the total size of the
+ *  mapped windows is kept under BUDGET by dropping the least recently used windows that are
+ *  not in use. A window stays mapped while its reference count is positive, so callers must
+ *  release() every window they acquire().
+ *  The sizes can be tuned with the gitlet.mmap.window and gitlet.mmap.budget system properties.
+ */
+class WindowCache {
+
+    /** The size of a regular window in bytes. */
+    static final long WINDOW_SIZE = Long.getLong("gitlet.mmap.window", 32L << 20);
+
+    /** The soft limit of the total size of mapped windows in bytes. */
+    static final long BUDGET = Long.getLong("gitlet.mmap.budget", 512L << 20);
+
+    /** A mapped region [start, start + buffer.capacity()) of a file. */
+    static final class Window {
+        private final Object key;
+        private final long start;
+        private final MappedByteBuffer buffer;
+        private int refCount;
+
+        private Window(Object key, long start, MappedByteBuffer buffer) {
+            this.key = key;
+            this.start = start;
+            this.buffer = buffer;
+        }
+
+        /** Return a buffer over the LENGTH bytes of the file starting at POSITION,
+         *  which must lie inside this window. */
+        ByteBuffer slice(long position, int length) {
+            return buffer.slice((int) (position - start), length);
+        }
+
+        /** Give back this window once the buffers sliced from it are no longer used. */
+        void release() {
+            WindowCache.release(this);
+        }
+    }
+
+    /** Cached windows in access order, keyed by file and window number. */
+    private static final LinkedHashMap<Object, Window> windows = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Windows mapped outside of the cache, for objects crossing a window boundary. */
+    private static final Map<Window, Long> oneOffs = new HashMap<>();
+
+    private static long mappedBytes = 0;
+
+    /** Return a window of CHANNEL containing the LENGTH bytes starting at POSITION, with its reference
+     *  count incremented. FILE identifies CHANNEL in the cache and SIZE is the size of the file. */
+    static synchronized Window acquire(Object file, FileChannel channel, long size, long position, int length) {
+        long windowNumber = position / WINDOW_SIZE;
+        long windowStart = windowNumber * WINDOW_SIZE;
+        Window window;
+        if (position + length > windowStart + WINDOW_SIZE) {
+            window = new Window(null, position, map(channel, position, length));
+            oneOffs.put(window, (long) length);
+            mappedBytes += length;
+        } else {
+            Object key = Map.entry(file, windowNumber);
+            window = windows.get(key);
+            if (window == null) {
+                long windowLength = Math.min(WINDOW_SIZE, size - windowStart);
+                window = new Window(key, windowStart, map(channel, windowStart, windowLength));
+                windows.put(key, window);
+                mappedBytes += windowLength;
+            }
+        }
+        window.refCount += 1;
+        evict();
+        return window;
+    }
+
+    /** Drop every cached window of FILE that is not in use, e.g. before FILE is deleted. */
+    static synchronized void forget(Object file) {
+        windows.values().removeIf(window -> {
+            boolean drop = window.refCount == 0 && ((Map.Entry<?, ?>) window.key).getKey() == file;
+            if (drop) {
+                mappedBytes -= window.buffer.capacity();
+            }
+            return drop;
+        });
+    }
+
+    private static synchronized void release(Window window) {
+        window.refCount -= 1;
+        if (window.key == null && window.refCount == 0) {
+            mappedBytes -= oneOffs.remove(window);
+        }
+        evict();
+    }
+
+    /** Unreference the least recently used idle windows until the budget is met.
+     *  The mappings themselves go away when the buffers are garbage collected. */
+    private static void evict() {
+        Iterator<Window> iter = windows.values().iterator();
+        while (mappedBytes > BUDGET && iter.hasNext()) {
+            Window window = iter.next();
+            if (window.refCount == 0) {
+                iter.remove();
+                mappedBytes -= window.buffer.capacity();
+            }
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long length) {
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+}